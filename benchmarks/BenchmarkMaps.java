@@ -0,0 +1,105 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Finds and loads the maps in data/ for the benchmarks.
+ *
+ * data/large doesn't come with a segments file, so it is loaded with an empty one (just the header line).
+ * That still parses all of its nodes, roads and polygons, but it has no segments to draw or route along,
+ * so the benchmarks which need segments load maps with loadWithSegments, which refuses it.
+ */
+public class BenchmarkMaps {
+
+    // The directory with the maps in it (run the benchmarks from the project directory, or set -Ddata=...)
+    private static final File DATA = new File(System.getProperty("data", "data"));
+
+    // The segments file which stands in for a missing one
+    private static File emptySegments;
+
+    /**
+     * @param map - The name of a map directory in data/, like "small"
+     * @return The files to load, in the order Main.onLoad is given them (the polygons are null if there aren't any)
+     * @throws IOException - If the map doesn't exist, or the empty segments file can't be written
+     */
+    public static File[] files(String map) throws IOException {
+        File dir = new File(DATA, map);
+        File nodes = new File(dir, "nodeID-lat-lon.tab");
+        File roads = new File(dir, "roadID-roadInfo.tab");
+        File segments = new File(dir, "roadSeg-roadID-length-nodeID-nodeID-coords.tab");
+        File polygons = new File(dir, PolygonShapes.FILENAME);
+        if(!nodes.exists() || !roads.exists()) {
+            throw new IOException("No map in " + dir.getAbsolutePath() + " (run from the project directory, or set -Ddata)");
+        }
+        if(!segments.exists()) {
+            segments = emptySegments();
+        }
+        return new File[]{nodes, roads, segments, polygons.exists() ? polygons : null};
+    }
+
+    /**
+     * Loads a map the way the MapLoader does when there isn't a snapshot: parses the .tab files and the
+     * polygons, and builds the MapData.
+     *
+     * @param map - The name of a map directory in data/
+     * @return The loaded map
+     * @throws IOException - If a file can't be read
+     */
+    public static MapData load(String map) throws IOException {
+        File[] files = files(map);
+        LoadProgress progress = files[3] == null ? new LoadProgress(files[0], files[1], files[2]) : new LoadProgress(files);
+        MapData data = TabLoader.load(files[0], files[1], files[2], progress);
+        if(files[3] != null) {
+            data.setPolygons(PolygonShapes.load(files[3], progress));
+        }
+        return data;
+    }
+
+    /**
+     * Loads a map for a benchmark which needs its segments (routing, drawing, clicking on intersections).
+     *
+     * @param map - The name of a map directory in data/
+     * @return The loaded map
+     * @throws IOException - If a file can't be read, or the map has no segments (like data/large)
+     */
+    public static MapData loadWithSegments(String map) throws IOException {
+        MapData data = load(map);
+        if(data.getSegmentList().isEmpty()) {
+            throw new IOException("data/" + map + " has no segments, so there is nothing to route along or draw");
+        }
+        return data;
+    }
+
+    /**
+     * @return A segments file with no segments in it
+     */
+    private static synchronized File emptySegments() throws IOException {
+        if(emptySegments == null) {
+            File file = File.createTempFile("segments", ".tab");
+            file.deleteOnExit();
+            Files.write(file.toPath(), "roadID\tlength\tnodeID1\tnodeID2\tcoords\n".getBytes(StandardCharsets.UTF_8));
+            emptySegments = file;
+        }
+        return emptySegments;
+    }
+
+    /**
+     * @param data - A map
+     * @return The middle of the map's intersections
+     */
+    public static Location centre(MapData data) {
+        DoubleBuffer xs = data.getGraph().getNodeX();
+        DoubleBuffer ys = data.getGraph().getNodeY();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < xs.limit(); i++) {
+            minX = Math.min(minX, xs.get(i));
+            maxX = Math.max(maxX, xs.get(i));
+            minY = Math.min(minY, ys.get(i));
+            maxY = Math.max(maxY, ys.get(i));
+        }
+        return new Location((minX + maxX) / 2, (minY + maxY) / 2);
+    }
+}
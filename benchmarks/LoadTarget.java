@@ -0,0 +1,26 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads the parts of a map, for benchmark.LoadBenchmark.
+ */
+public class LoadTarget implements benchmark.LoadBenchmark.Target {
+
+    // The files of the map
+    private File[] files;
+
+    @Override
+    public void setup(String map) throws IOException {
+        files = BenchmarkMaps.files(map);
+    }
+
+    @Override
+    public MapData parseTabFiles() throws IOException {
+        return TabLoader.load(files[0], files[1], files[2], new LoadProgress(files[0], files[1], files[2]));
+    }
+
+    @Override
+    public PolygonShapes parsePolygons() throws IOException {
+        return files[3] == null ? null : PolygonShapes.load(files[3], new LoadProgress(files[3]));
+    }
+}
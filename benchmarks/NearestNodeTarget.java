@@ -0,0 +1,45 @@
+import java.awt.Point;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Finds the nearest intersection to a click, for benchmark.NearestNodeBenchmark.
+ */
+public class NearestNodeTarget implements benchmark.NearestNodeBenchmark.Target {
+
+    // The size of the window, and the scale
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final double SCALE = 90;
+
+    // How many different clicks there are
+    private static final int CLICKS = 1024;
+
+    // The map, and the top left corner of the window
+    private MapData data;
+    private Location origin;
+
+    // Where each click is, and which one is next
+    private Point[] clicks;
+    private int next;
+
+    @Override
+    public void setup(String map) throws IOException {
+        data = BenchmarkMaps.loadWithSegments(map);
+        Location centre = BenchmarkMaps.centre(data);
+        origin = new Location(centre.x - WIDTH / 2 / SCALE, centre.y + HEIGHT / 2 / SCALE);
+        Random random = new Random(261);
+        clicks = new Point[CLICKS];
+        for(int i = 0; i < CLICKS; i++) {
+            clicks[i] = new Point(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+        }
+    }
+
+    @Override
+    public int nearest() {
+        Point p = clicks[next];
+        next = (next + 1) % CLICKS;
+        Location click = Location.newFromPoint(p, origin, SCALE);
+        return data.getNodeTree().nearest(click.x, click.y);
+    }
+}
@@ -0,0 +1,70 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Draws the map into an image the size of the window, for benchmark.RedrawBenchmark.
+ */
+public class RedrawTarget implements benchmark.RedrawBenchmark.Target {
+
+    // The size of the window
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    // How many pixels the map is panned between redraws, and how many pans there are before it goes back
+    private static final int PAN = 7;
+    private static final int PANS = 64;
+
+    // What is drawn, and what it is drawn into
+    private MapRenderer renderer;
+    private TileCache tiles;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    // The scale, the top left corner of the window, and how far it has been panned
+    private double scale;
+    private Location origin;
+    private int pan;
+
+    @Override
+    public void setup(String map, double scale) throws IOException {
+        MapData data = BenchmarkMaps.loadWithSegments(map);
+        renderer = new MapRenderer(data);
+        tiles = new TileCache(renderer);
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g = image.createGraphics();
+        this.scale = scale;
+        Location centre = BenchmarkMaps.centre(data);
+        origin = new Location(centre.x - WIDTH / 2 / scale, centre.y + HEIGHT / 2 / scale);
+    }
+
+    @Override
+    public BufferedImage tiles() {
+        clear();
+        Location panned = new Location(origin.x + pan * PAN / scale, origin.y);
+        pan = (pan + 1) % PANS;
+        tiles.draw(g, panned, scale, WIDTH, HEIGHT);
+        return image;
+    }
+
+    @Override
+    public BufferedImage render() {
+        clear();
+        renderer.draw(g, origin, scale, WIDTH, HEIGHT);
+        return image;
+    }
+
+    @Override
+    public void tearDown() {
+        g.dispose();
+    }
+
+    /**
+     * Clears the image, like the window's background is before a redraw.
+     */
+    private void clear() {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+    }
+}
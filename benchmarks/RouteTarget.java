@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Finds routes and isochrones between random intersections, for benchmark.RouteBenchmark.
+ */
+public class RouteTarget implements benchmark.RouteBenchmark.Target {
+
+    // How many different pairs of intersections there are
+    private static final int PAIRS = 1024;
+
+    // How far the isochrone reaches, in minutes (the same as Main)
+    private static final double ISOCHRONE_MINUTES = 10;
+
+    // The map, and the ways of finding routes on it
+    private MapData data;
+    private RouteProfile profile;
+    private ContractionHierarchy hierarchy;
+
+    // The start and end of each route, and which one is next
+    private int[] from;
+    private int[] to;
+    private int next;
+
+    @Override
+    public void setup(String map) throws IOException {
+        data = BenchmarkMaps.loadWithSegments(map);
+        profile = RouteProfile.fastest(RouteProfile.Mode.CAR);
+        hierarchy = ContractionHierarchy.build(data.getGraph(), profile, null);
+        Random random = new Random(261);
+        int nodes = data.getGraph().getNodeCount();
+        from = new int[PAIRS];
+        to = new int[PAIRS];
+        for(int i = 0; i < PAIRS; i++) {
+            from[i] = random.nextInt(nodes);
+            to[i] = random.nextInt(nodes);
+        }
+    }
+
+    @Override
+    public Route astar() {
+        int i = nextPair();
+        return data.getRoutePlanner().route(from[i], to[i], profile);
+    }
+
+    @Override
+    public Route hierarchy() {
+        int i = nextPair();
+        return hierarchy.route(from[i], to[i]);
+    }
+
+    @Override
+    public Isochrone isochrone() {
+        return data.getRoutePlanner().isochrone(from[nextPair()], profile, ISOCHRONE_MINUTES);
+    }
+
+    /**
+     * @return The index of the next pair of intersections
+     */
+    private int nextPair() {
+        int i = next;
+        next = (i + 1) % PAIRS;
+        return i;
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds and searches a Trie of road names, for benchmark.TrieBenchmark.
+ */
+public class TrieTarget implements benchmark.TrieBenchmark.Target {
+
+    // The roads, and the Trie with all of them in it
+    private List<Road> roads;
+    private Trie<Road> trie;
+
+    // Every road name, and a prefix of each one (about half of it, which is what is typed into the search box)
+    private String[] names;
+    private String[] prefixes;
+    // Which name to look up next
+    private int next;
+
+    @Override
+    public void setup(String map) throws IOException {
+        MapData data = BenchmarkMaps.load(map);
+        roads = new ArrayList<>(data.getRoads());
+        trie = data.getRoadTrie();
+        names = new String[roads.size()];
+        prefixes = new String[roads.size()];
+        for(int i = 0; i < names.length; i++) {
+            names[i] = roads.get(i).getRoadName();
+            prefixes[i] = names[i].substring(0, (names[i].length() + 1) / 2);
+        }
+    }
+
+    @Override
+    public Trie<Road> add() {
+        Trie<Road> t = new Trie<Road>(r -> r.getRoadClass() * 100 - r.getRoadName().length());
+        for(Road r : roads) {
+            t.add(r.getRoadName(), r);
+        }
+        return t;
+    }
+
+    @Override
+    public List<Road> get() {
+        return trie.get(names[nextIndex()]);
+    }
+
+    @Override
+    public List<Road> getAll() {
+        return trie.getAll(prefixes[nextIndex()]);
+    }
+
+    /**
+     * @return The index of the next name to look up
+     */
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == names.length ? 0 : i + 1;
+        return i;
+    }
+}
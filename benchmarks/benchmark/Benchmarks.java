@@ -0,0 +1,36 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks (the main class of target/benchmarks.jar).
+ *
+ * Takes the usual JMH command line options, and always adds the gc profiler, so as well as the throughput
+ * and latency percentiles (each benchmark runs in both modes) every result has its allocation rate.
+ * Unless a result file is asked for, the results are also written to target/jmh-result.json, so two runs
+ * can be compared.
+ */
+public class Benchmarks {
+
+    /**
+     * @param args - JMH options, like a regex of the benchmarks to run
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if(options.getProfilers().stream().noneMatch(p -> p.getKlass().equals("gc") || p.getKlass().equals(GCProfiler.class.getName()))) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        if(!options.getResult().hasValue() && !options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON).result("target/jmh-result.json");
+        }
+        new Runner(builder.build()).run();
+    }
+}
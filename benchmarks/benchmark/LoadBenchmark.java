@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * How long it takes to load a map when Main.onLoad is called and there isn't a snapshot: parsing the .tab
+ * files and the polygons, and building the graph, trees and trie in MapData.
+ *
+ * The snapshot and route hierarchies are left out, since they are only built the first time a map is loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    /**
+     * Loads the parts of a map (implemented by LoadTarget).
+     */
+    public interface Target {
+        void setup(String map) throws IOException;
+        Object parseTabFiles() throws IOException;
+        Object parsePolygons() throws IOException;
+    }
+
+    // The map to load
+    @Param({"small", "large"})
+    public String map;
+
+    private Target target;
+
+    @Setup
+    public void setup() throws IOException {
+        target = Targets.create("LoadTarget", Target.class);
+        target.setup(map);
+    }
+
+    /**
+     * Parses the three .tab files and builds the MapData.
+     */
+    @Benchmark
+    public Object parseTabFiles() throws IOException {
+        return target.parseTabFiles();
+    }
+
+    /**
+     * Parses the polygons (nothing, if the map doesn't have any).
+     */
+    @Benchmark
+    public Object parsePolygons() throws IOException {
+        return target.parsePolygons();
+    }
+}
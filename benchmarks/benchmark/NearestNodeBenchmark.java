@@ -0,0 +1,49 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Finding the intersection nearest to a mouse click, the way Main.onClick does: turning the click into a
+ * Location and asking the node quadtree for the nearest node.
+ *
+ * The clicks are spread over an 800x600 window looking at the middle of the map, at Main's starting scale.
+ * Only data/small is used, as data/large has no segments (so its intersections aren't connected to anything).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestNodeBenchmark {
+
+    /**
+     * Finds the nearest intersection to a click (implemented by NearestNodeTarget).
+     */
+    public interface Target {
+        void setup(String map) throws IOException;
+        int nearest();
+    }
+
+    // The map to click on (one with segments)
+    @Param({"small"})
+    public String map;
+
+    private Target target;
+
+    @Setup
+    public void setup() throws IOException {
+        target = Targets.create("NearestNodeTarget", Target.class);
+        target.setup(map);
+    }
+
+    /**
+     * Finds the nearest intersection to the next click.
+     */
+    @Benchmark
+    public int nearest() {
+        return target.nearest();
+    }
+}
@@ -0,0 +1,70 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Drawing the map headlessly into a BufferedImage the size of the window, like Main.redraw(Graphics).
+ *
+ * tiles is what a redraw costs normally: panning a little each time, so most of the tiles come from the
+ * TileCache and only the odd new one is drawn. render is what it costs to draw the whole window from
+ * scratch with the MapRenderer, which is what happens to every tile after zooming.
+ *
+ * Only data/small is drawn, as data/large has no segments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RedrawBenchmark {
+
+    /**
+     * Draws the map into an image (implemented by RedrawTarget).
+     */
+    public interface Target {
+        void setup(String map, double scale) throws IOException;
+        Object tiles();
+        Object render();
+        void tearDown();
+    }
+
+    // The map to draw (one with segments)
+    @Param({"small"})
+    public String map;
+
+    // The scale (Main starts at 90, and zooming goes up and down from there)
+    @Param({"9", "90", "900"})
+    public double scale;
+
+    private Target target;
+
+    @Setup
+    public void setup() throws IOException {
+        target = Targets.create("RedrawTarget", Target.class);
+        target.setup(map, scale);
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.tearDown();
+    }
+
+    /**
+     * Redraws the window from the tile cache, panned a bit further than last time.
+     */
+    @Benchmark
+    public Object tiles() {
+        return target.tiles();
+    }
+
+    /**
+     * Draws the whole window from scratch.
+     */
+    @Benchmark
+    public Object render() {
+        return target.render();
+    }
+}
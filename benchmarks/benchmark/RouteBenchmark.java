@@ -0,0 +1,62 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Finding routes between intersections, like shift clicking in Main does, and the isochrone from control
+ * clicking. Routes go between random pairs of intersections on data/small (data/large has no segments).
+ *
+ * astar is the plain A* search, and hierarchy is the contraction hierarchy (built once, in the setup).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteBenchmark {
+
+    /**
+     * Finds routes and isochrones (implemented by RouteTarget).
+     */
+    public interface Target {
+        void setup(String map) throws IOException;
+        Object astar();
+        Object hierarchy();
+        Object isochrone();
+    }
+
+    private Target target;
+
+    @Setup
+    public void setup() throws IOException {
+        target = Targets.create("RouteTarget", Target.class);
+        target.setup("small");
+    }
+
+    /**
+     * Finds the fastest route by car with A*.
+     */
+    @Benchmark
+    public Object astar() {
+        return target.astar();
+    }
+
+    /**
+     * Finds the fastest route by car with the contraction hierarchy.
+     */
+    @Benchmark
+    public Object hierarchy() {
+        return target.hierarchy();
+    }
+
+    /**
+     * Finds everything within 10 minutes of an intersection by car.
+     */
+    @Benchmark
+    public Object isochrone() {
+        return target.isochrone();
+    }
+}
@@ -0,0 +1,25 @@
+package benchmark;
+
+/**
+ * Makes the objects which the benchmarks run.
+ *
+ * JMH won't run benchmarks in the default package, but the map program is all in the default package, which
+ * can't be imported from anywhere else. So each benchmark class has a Target interface, which a class in the
+ * default package (with the same name as the benchmark, but ending in Target) implements by calling the map
+ * code. The target is found by name, and from then on is called through the interface like anything else.
+ */
+public class Targets {
+
+    /**
+     * @param name - The name of the target class, in the default package
+     * @param type - The interface it implements
+     * @return A new target
+     */
+    public static <T> T create(String name, Class<T> type) {
+        try {
+            return type.cast(Class.forName(name).getDeclaredConstructor().newInstance());
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not make the benchmark target " + name, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The road name Trie, filled with every road of a map the way MapData does it.
+ *
+ * Lookups go through the road names in turn, so every name (and every prefix length) gets looked up,
+ * rather than the same one again and again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBenchmark {
+
+    /**
+     * Builds and searches a Trie of road names (implemented by TrieTarget).
+     */
+    public interface Target {
+        void setup(String map) throws IOException;
+        Object add();
+        Object get();
+        Object getAll();
+    }
+
+    // The map whose road names are used
+    @Param({"small", "large"})
+    public String map;
+
+    private Target target;
+
+    @Setup
+    public void setup() throws IOException {
+        target = Targets.create("TrieTarget", Target.class);
+        target.setup(map);
+    }
+
+    /**
+     * Builds a new Trie of every road, the way MapData does.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object add() {
+        return target.add();
+    }
+
+    /**
+     * Looks up the roads with exactly the next name.
+     */
+    @Benchmark
+    public Object get() {
+        return target.get();
+    }
+
+    /**
+     * Looks up every road starting with the next prefix.
+     */
+    @Benchmark
+    public Object getAll() {
+        return target.getAll();
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A union-find (disjoint set) structure which many threads can use at once without any locks.
+ *
+ * Each item points at its parent, and the roots name the sets. The parents are in an AtomicIntegerArray,
+ * and a root is only ever linked with a compare-and-set, which fails (and is retried) if another thread
+ * linked it first. Roots are always linked under a root with a smaller index, so the parent pointers can
+ * never form a loop however the threads interleave. find() halves the path it walks as it goes, with a
+ * compare-and-set too, so a thread which loses that race just leaves the path a bit longer.
+ */
+public class ConcurrentUnionFind {
+
+    // The parent of each item (roots are their own parent)
+    private final AtomicIntegerArray parent;
+
+    /**
+     * Creates the sets, with every item in a set of its own.
+     *
+     * @param count - The number of items (items go from 0 up to count - 1)
+     */
+    public ConcurrentUnionFind(int count) {
+        parent = new AtomicIntegerArray(count);
+        for(int i = 0; i < count; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    /**
+     * @param item - An item
+     * @return The root of the item's set (which might change if other threads are still joining sets)
+     */
+    public int find(int item) {
+        while(true) {
+            int p = parent.get(item);
+            if(p == item) {return item;}
+            int grandparent = parent.get(p);
+            if(grandparent != p) {
+                parent.compareAndSet(item, p, grandparent);
+            }
+            item = grandparent;
+        }
+    }
+
+    /**
+     * Joins the sets of two items.
+     *
+     * @param a - An item
+     * @param b - Another item
+     */
+    public void union(int a, int b) {
+        while(true) {
+            a = find(a);
+            b = find(b);
+            if(a == b) {return;}
+            // Link the bigger index under the smaller one, if it is still a root
+            if(a < b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            if(parent.compareAndSet(a, a, b)) {return;}
+        }
+    }
+
+    /**
+     * @return The number of items
+     */
+    public int size() {
+        return parent.length();
+    }
+}
@@ -0,0 +1,634 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A contraction hierarchy of the road graph for one RouteProfile, which answers route queries much faster than A*.
+ *
+ * Building it "contracts" the nodes one at a time, least important first. Contracting a node takes it out of
+ * the graph, and wherever the only best path between two of its neighbours went through it, a shortcut edge
+ * is added between them. Each shortcut remembers the two edges it stands for. The order the nodes were
+ * contracted in is their rank.
+ *
+ * A query then searches forwards from the start and backwards from the end at the same time, each only
+ * ever going up to nodes of a higher rank, which means only a small part of the graph is looked at.
+ * The best place the two searches meet gives the route, and the shortcuts on it are unpacked back into
+ * the segments they stand for.
+ *
+ * The ranks and shortcuts (the overlay) can be written to a file and read back in, as they take a while
+ * to build. The edges which come straight from segments aren't stored, as they can be made again from
+ * the graph and the profile.
+ *
+ * File layout (all big endian):
+ *  - header: magic, version, and the length and last modified time of each source file
+ *  - counts: nodes, segments, and edges made from segments (to check the file fits the graph)
+ *  - the rank of each node
+ *  - shortcuts: count, then (from, to, cost, first edge, second edge) for each shortcut
+ */
+public class ContractionHierarchy {
+
+    // The end of the hierarchy files' names (they live with the .tab files)
+    public static final String EXTENSION = ".ch";
+
+    // "RMCH", used to check that the file actually is a hierarchy
+    private static final int MAGIC = 0x524D4348;
+    // Must be changed whenever the layout changes, so old files get rebuilt
+    private static final int VERSION = 1;
+
+    // The most nodes a witness search settles before giving up (and adding the shortcut anyway)
+    private static final int WITNESS_LIMIT = 500;
+
+    // The road graph
+    private final RoadGraph graph;
+    // The profile which gives the edge costs
+    private final RouteProfile profile;
+
+    // Edges: the ones made from segments come first, then the shortcuts
+    private int edgeCount = 0;
+    private int originalCount;
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+    private double[] edgeCost = new double[16];
+    // For an edge made from a segment, first is the segment and second is -1. For a shortcut, the two edges it stands for.
+    private int[] edgeFirst = new int[16];
+    private int[] edgeSecond = new int[16];
+
+    // The order each node was contracted in
+    private int[] rank;
+
+    // The edges going up from each node (CSR), for the forward search
+    private int[] upStart;
+    private int[] upEdges;
+    // The edges coming down into each node (CSR), for the backward search
+    private int[] downStart;
+    private int[] downEdges;
+
+    // The search state for each thread which runs queries
+    private final ThreadLocal<QueryState> state;
+
+    /**
+     * Makes the edges from the segments. The hierarchy isn't usable until it is contracted (or read).
+     */
+    private ContractionHierarchy(RoadGraph graph, RouteProfile profile) {
+        this.graph = graph;
+        this.profile = profile;
+        this.state = ThreadLocal.withInitial(() -> new QueryState(graph.getNodeCount()));
+
+        IntBuffer segRoad = graph.getSegRoad();
+        IntBuffer segNode1 = graph.getSegNode1();
+        IntBuffer segNode2 = graph.getSegNode2();
+        for(int s = 0; s < graph.getSegmentCount(); s++) {
+            int road = segRoad.get(s);
+            if(segNode1.get(s) == segNode2.get(s) || !profile.canUse(graph, road)) {continue;}
+            double cost = profile.cost(graph, s);
+            addEdge(segNode1.get(s), segNode2.get(s), cost, s, -1);
+            // One way roads go from node 1 to node 2
+            if(!graph.roadHas(road, RoadGraph.ONEWAY) || !profile.obeysOneway(graph, road)) {
+                addEdge(segNode2.get(s), segNode1.get(s), cost, s, -1);
+            }
+        }
+        originalCount = edgeCount;
+    }
+
+    /**
+     * Builds the hierarchy, by contracting every node.
+     *
+     * @param graph - The road graph
+     * @param profile - The profile which gives the edge costs
+     * @param progress - Checked for cancellation now and then (may be null)
+     * @return The hierarchy
+     */
+    public static ContractionHierarchy build(RoadGraph graph, RouteProfile profile, LoadProgress progress) {
+        ContractionHierarchy ch = new ContractionHierarchy(graph, profile);
+        new Contractor(ch).run(progress);
+        ch.index();
+        return ch;
+    }
+
+    /**
+     * Adds an edge, growing the arrays if they are full.
+     *
+     * @return The index of the new edge
+     */
+    private int addEdge(int from, int to, double cost, int first, int second) {
+        if(edgeCount == edgeFrom.length) {
+            int size = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, size);
+            edgeTo = Arrays.copyOf(edgeTo, size);
+            edgeCost = Arrays.copyOf(edgeCost, size);
+            edgeFirst = Arrays.copyOf(edgeFirst, size);
+            edgeSecond = Arrays.copyOf(edgeSecond, size);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeCost[edgeCount] = cost;
+        edgeFirst[edgeCount] = first;
+        edgeSecond[edgeCount] = second;
+        return edgeCount++;
+    }
+
+    /**
+     * Sorts the edges into the upward and downward lists, once the ranks are known.
+     */
+    private void index() {
+        int n = graph.getNodeCount();
+        upStart = new int[n + 1];
+        downStart = new int[n + 1];
+        for(int e = 0; e < edgeCount; e++) {
+            if(rank[edgeFrom[e]] < rank[edgeTo[e]]) {
+                upStart[edgeFrom[e] + 1]++;
+            } else {
+                downStart[edgeTo[e] + 1]++;
+            }
+        }
+        for(int i = 0; i < n; i++) {
+            upStart[i + 1] += upStart[i];
+            downStart[i + 1] += downStart[i];
+        }
+
+        upEdges = new int[upStart[n]];
+        downEdges = new int[downStart[n]];
+        int[] upNext = Arrays.copyOf(upStart, n);
+        int[] downNext = Arrays.copyOf(downStart, n);
+        for(int e = 0; e < edgeCount; e++) {
+            if(rank[edgeFrom[e]] < rank[edgeTo[e]]) {
+                upEdges[upNext[edgeFrom[e]]++] = e;
+            } else {
+                downEdges[downNext[edgeTo[e]]++] = e;
+            }
+        }
+    }
+
+    /**
+     * Finds the best route between two nodes.
+     *
+     * @param from - The index of the start node
+     * @param to - The index of the end node
+     * @return The route, or null if the end can't be reached from the start
+     */
+    public Route route(int from, int to) {
+        QueryState s = state.get();
+        s.reset();
+
+        s.forward.reach(from, 0, -1);
+        s.forward.heap.push(from, 0);
+        s.backward.reach(to, 0, -1);
+        s.backward.heap.push(to, 0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+
+        while(true) {
+            // Each side stops once nothing in its heap can beat the best route so far
+            boolean forwardDone = s.forward.heap.isEmpty() || s.forward.heap.peekKey() >= best;
+            boolean backwardDone = s.backward.heap.isEmpty() || s.backward.heap.peekKey() >= best;
+            if(forwardDone && backwardDone) {break;}
+
+            // Take whichever side has the closer node
+            boolean forwards = backwardDone || (!forwardDone && s.forward.heap.peekKey() <= s.backward.heap.peekKey());
+            Search search = forwards ? s.forward : s.backward;
+            Search other = forwards ? s.backward : s.forward;
+            int[] start = forwards ? upStart : downStart;
+            int[] edges = forwards ? upEdges : downEdges;
+            int[] ends = forwards ? edgeTo : edgeFrom;
+
+            int node = search.heap.pop();
+            double cost = search.cost[node];
+            if(other.isReached(node) && cost + other.cost[node] < best) {
+                best = cost + other.cost[node];
+                meet = node;
+            }
+
+            for(int i = start[node]; i < start[node + 1]; i++) {
+                int e = edges[i];
+                int next = ends[e];
+                double nextCost = cost + edgeCost[e];
+                if(!search.isReached(next) || nextCost < search.cost[next]) {
+                    search.reach(next, nextCost, e);
+                    search.heap.push(next, nextCost);
+                }
+            }
+        }
+
+        if(meet < 0) {return null;}
+        return unpack(s, from, to, meet, best);
+    }
+
+    /**
+     * Turns the edges found by the two searches back into the segments they stand for.
+     */
+    private Route unpack(QueryState s, int from, int to, int meet, double cost) {
+        // The edges from the start up to the meeting node, then from there down to the end
+        int forwardCount = 0;
+        for(int node = meet; node != from; node = edgeFrom[s.forward.via[node]]) {
+            forwardCount++;
+        }
+        int backwardCount = 0;
+        for(int node = meet; node != to; node = edgeTo[s.backward.via[node]]) {
+            backwardCount++;
+        }
+
+        // They go on the stack in reverse, so the first edge comes off first
+        int[] stack = new int[Math.max(16, 2 * (forwardCount + backwardCount))];
+        int top = 0;
+        for(int node = meet; node != to; node = edgeTo[s.backward.via[node]]) {
+            stack[backwardCount - 1 - top++] = s.backward.via[node];
+        }
+        for(int node = meet; node != from; node = edgeFrom[s.forward.via[node]]) {
+            stack[top++] = s.forward.via[node];
+        }
+
+        // Unpack each shortcut into its two edges, until only segments are left
+        int[] segments = new int[16];
+        int count = 0;
+        while(top > 0) {
+            int e = stack[--top];
+            if(edgeSecond[e] < 0) {
+                if(count == segments.length) {segments = Arrays.copyOf(segments, count * 2);}
+                segments[count++] = edgeFirst[e];
+            } else {
+                if(top + 2 > stack.length) {stack = Arrays.copyOf(stack, stack.length * 2);}
+                stack[top++] = edgeSecond[e];
+                stack[top++] = edgeFirst[e];
+            }
+        }
+        segments = Arrays.copyOf(segments, count);
+
+        int[] nodes = new int[count + 1];
+        double length = 0;
+        nodes[0] = from;
+        for(int i = 0; i < count; i++) {
+            nodes[i + 1] = graph.otherNode(segments[i], nodes[i]);
+            length += graph.getSegLength().get(segments[i]);
+        }
+        return new Route(nodes, segments, cost, length);
+    }
+
+    /**
+     * Writes the ranks and shortcuts to a file. Like a GraphSnapshot, it is written to a temporary file which
+     * is then moved into place, so it is never left half written.
+     *
+     * @param file - The file to write to
+     * @param sources - The files the map was loaded from (used to tell when the file is out of date)
+     * @throws IOException - If the file can't be written
+     */
+    public void write(File file, File... sources) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            writeTo(temp, sources);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath()); // Only still there if something went wrong
+        }
+    }
+
+    /**
+     * Writes the ranks and shortcuts to a file, in the hierarchy file layout.
+     */
+    private void writeTo(File file, File... sources) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            // Header
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sources.length);
+            for(File f : sources) {
+                out.writeLong(f.length());
+                out.writeLong(f.lastModified());
+            }
+            out.writeInt(graph.getNodeCount());
+            out.writeInt(graph.getSegmentCount());
+            out.writeInt(originalCount);
+
+            // Ranks
+            for(int r : rank) {
+                out.writeInt(r);
+            }
+
+            // Shortcuts
+            out.writeInt(edgeCount - originalCount);
+            for(int e = originalCount; e < edgeCount; e++) {
+                out.writeInt(edgeFrom[e]);
+                out.writeInt(edgeTo[e]);
+                out.writeDouble(edgeCost[e]);
+                out.writeInt(edgeFirst[e]);
+                out.writeInt(edgeSecond[e]);
+            }
+        }
+    }
+
+    /**
+     * Reads a hierarchy from a file, by memory mapping it.
+     *
+     * @param file - The file to read
+     * @param graph - The road graph the hierarchy was built for
+     * @param profile - The profile the hierarchy was built with
+     * @param sources - The files the map was loaded from
+     * @return The hierarchy, or null if there is no file or it is out of date (wrong version, or the sources have changed)
+     *         or cut short
+     * @throws IOException - If the file can't be read
+     */
+    public static ContractionHierarchy read(File file, RoadGraph graph, RouteProfile profile, File... sources) throws IOException {
+        if(!file.isFile()) {return null;}
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // Check the header
+            if(buf.remaining() < 12 || buf.getInt() != MAGIC || buf.getInt() != VERSION) {return null;}
+            if(buf.getInt() != sources.length) {return null;}
+            for(File f : sources) {
+                if(buf.getLong() != f.length() || buf.getLong() != f.lastModified()) {return null;}
+            }
+            ContractionHierarchy ch = new ContractionHierarchy(graph, profile);
+            if(buf.getInt() != graph.getNodeCount() || buf.getInt() != graph.getSegmentCount() || buf.getInt() != ch.originalCount) {return null;}
+
+            // Ranks
+            ch.rank = new int[graph.getNodeCount()];
+            for(int i = 0; i < ch.rank.length; i++) {
+                ch.rank[i] = buf.getInt();
+            }
+
+            // Shortcuts
+            int shortcuts = buf.getInt();
+            for(int i = 0; i < shortcuts; i++) {
+                ch.addEdge(buf.getInt(), buf.getInt(), buf.getDouble(), buf.getInt(), buf.getInt());
+            }
+            ch.index();
+            return ch;
+        } catch(BufferUnderflowException e) { // The file ends early, so it will just be built again
+            return null;
+        }
+    }
+
+    /**
+     * @return The profile which gives the edge costs
+     */
+    public RouteProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Contracts the nodes of a hierarchy, least important first.
+     *
+     * A node's importance is its edge difference (the shortcuts contracting it would add, less the edges it
+     * would remove) plus how many of its neighbours have been contracted already, which spreads the
+     * contraction evenly over the map. Rather than working out the importance of every neighbour each time
+     * a node is contracted, a node's importance is only checked again when it comes off the queue. If it
+     * has gone up past the next node's, it goes back on the queue.
+     */
+    private static class Contractor {
+
+        private final ContractionHierarchy ch;
+
+        // The edges into and out of each node (including ones to contracted nodes, which are skipped)
+        private final int[][] in;
+        private final int[] inCount;
+        private final int[][] out;
+        private final int[] outCount;
+
+        // Whether each node has been contracted, and how many of its neighbours have been
+        private final boolean[] contracted;
+        private final int[] deleted;
+
+        // The witness search
+        private final Search witness;
+
+        Contractor(ContractionHierarchy ch) {
+            this.ch = ch;
+            int n = ch.graph.getNodeCount();
+            in = new int[n][];
+            inCount = new int[n];
+            out = new int[n][];
+            outCount = new int[n];
+            contracted = new boolean[n];
+            deleted = new int[n];
+            witness = new Search(n);
+
+            for(int e = 0; e < ch.edgeCount; e++) {
+                link(e);
+            }
+        }
+
+        /**
+         * Adds an edge to the lists of both of its nodes.
+         */
+        private void link(int e) {
+            int from = ch.edgeFrom[e];
+            int to = ch.edgeTo[e];
+            if(out[from] == null) {out[from] = new int[4];}
+            if(outCount[from] == out[from].length) {out[from] = Arrays.copyOf(out[from], outCount[from] * 2);}
+            out[from][outCount[from]++] = e;
+            if(in[to] == null) {in[to] = new int[4];}
+            if(inCount[to] == in[to].length) {in[to] = Arrays.copyOf(in[to], inCount[to] * 2);}
+            in[to][inCount[to]++] = e;
+        }
+
+        /**
+         * Drops the edges to and from contracted nodes out of a node's lists, so they aren't looked at again.
+         */
+        private void prune(int node) {
+            int count = 0;
+            for(int i = 0; i < inCount[node]; i++) {
+                if(!contracted[ch.edgeFrom[in[node][i]]]) {in[node][count++] = in[node][i];}
+            }
+            inCount[node] = count;
+            count = 0;
+            for(int i = 0; i < outCount[node]; i++) {
+                if(!contracted[ch.edgeTo[out[node][i]]]) {out[node][count++] = out[node][i];}
+            }
+            outCount[node] = count;
+        }
+
+        /**
+         * Contracts every node, and gives each one its rank.
+         */
+        void run(LoadProgress progress) {
+            int n = contracted.length;
+            ch.rank = new int[n];
+            NodeHeap queue = new NodeHeap(n);
+            for(int v = 0; v < n; v++) {
+                queue.push(v, importance(v));
+            }
+
+            int order = 0;
+            while(!queue.isEmpty()) {
+                int v = queue.pop();
+                // The importance may have gone up since it was queued, in which case something else might be first now
+                double importance = importance(v);
+                if(!queue.isEmpty() && importance > queue.peekKey()) {
+                    queue.push(v, importance);
+                    continue;
+                }
+
+                shortcuts(v, true);
+                contracted[v] = true;
+                ch.rank[v] = order++;
+                if(progress != null && (order & 1023) == 0) {progress.checkCancelled();}
+
+                // The neighbours have lost an edge. Their importance is checked again when they come off the queue.
+                for(int i = 0; i < inCount[v]; i++) {
+                    int u = ch.edgeFrom[in[v][i]];
+                    if(!contracted[u]) {
+                        prune(u);
+                        deleted[u]++;
+                    }
+                }
+                for(int i = 0; i < outCount[v]; i++) {
+                    int w = ch.edgeTo[out[v][i]];
+                    if(!contracted[w]) {
+                        prune(w);
+                        deleted[w]++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return How important a node is (lower is contracted sooner)
+         */
+        private double importance(int v) {
+            int removed = 0;
+            for(int i = 0; i < inCount[v]; i++) {
+                if(!contracted[ch.edgeFrom[in[v][i]]]) {removed++;}
+            }
+            for(int i = 0; i < outCount[v]; i++) {
+                if(!contracted[ch.edgeTo[out[v][i]]]) {removed++;}
+            }
+            return shortcuts(v, false) - removed + deleted[v];
+        }
+
+        /**
+         * Works out which shortcuts contracting a node needs. For each neighbour u with an edge into v, a
+         * limited search from u (which avoids v) looks for a "witness" path to each neighbour w which v has an
+         * edge to. If there isn't one as good as going through v, the shortcut u -> w is needed.
+         *
+         * @param v - The node being contracted
+         * @param add - Whether to add the shortcuts, or only count them
+         * @return The number of shortcuts needed
+         */
+        private int shortcuts(int v, boolean add) {
+            // The most expensive edge out of v limits how far the witness searches need to go
+            double maxOut = 0;
+            for(int j = 0; j < outCount[v]; j++) {
+                int e2 = out[v][j];
+                if(!contracted[ch.edgeTo[e2]]) {maxOut = Math.max(maxOut, ch.edgeCost[e2]);}
+            }
+
+            int count = 0;
+            for(int i = 0; i < inCount[v]; i++) {
+                int e1 = in[v][i];
+                int u = ch.edgeFrom[e1];
+                if(contracted[u]) {continue;}
+
+                witnessSearch(u, v, ch.edgeCost[e1] + maxOut);
+                for(int j = 0; j < outCount[v]; j++) {
+                    int e2 = out[v][j];
+                    int w = ch.edgeTo[e2];
+                    if(w == u || contracted[w]) {continue;}
+
+                    double cost = ch.edgeCost[e1] + ch.edgeCost[e2];
+                    if(witness.isReached(w) && witness.cost[w] <= cost) {continue;}
+                    count++;
+                    if(add) {
+                        link(ch.addEdge(u, w, cost, e1, e2));
+                        // Later witness searches from u can use the new shortcut
+                        witness.reach(w, cost, -1);
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Searches out from u over the nodes which haven't been contracted (other than v), up to a cost limit.
+         */
+        private void witnessSearch(int u, int v, double limit) {
+            witness.reset();
+            witness.reach(u, 0, -1);
+            witness.heap.push(u, 0);
+            int settled = 0;
+
+            while(!witness.heap.isEmpty() && settled < WITNESS_LIMIT) {
+                if(witness.heap.peekKey() > limit) {break;}
+                int node = witness.heap.pop();
+                settled++;
+                double cost = witness.cost[node];
+                for(int i = 0; i < outCount[node]; i++) {
+                    int e = out[node][i];
+                    int next = ch.edgeTo[e];
+                    if(next == v || contracted[next]) {continue;}
+                    double nextCost = cost + ch.edgeCost[e];
+                    if(!witness.isReached(next) || nextCost < witness.cost[next]) {
+                        witness.reach(next, nextCost, e);
+                        witness.heap.push(next, nextCost);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * One direction of a search: the heap, the best cost to each node, and the edge it was reached by.
+     * Like the RoutePlanner, entries only count if they were written during the current search.
+     */
+    private static class Search {
+
+        private final NodeHeap heap;
+        private final double[] cost;
+        private final int[] via;
+        private final int[] reached;
+        private int search = 0;
+
+        Search(int nodeCount) {
+            heap = new NodeHeap(nodeCount);
+            cost = new double[nodeCount];
+            via = new int[nodeCount];
+            reached = new int[nodeCount];
+        }
+
+        void reset() {
+            heap.clear();
+            search++;
+            // Start the numbers again if they run out
+            if(search == Integer.MAX_VALUE) {
+                Arrays.fill(reached, 0);
+                search = 1;
+            }
+        }
+
+        void reach(int node, double c, int edge) {
+            reached[node] = search;
+            cost[node] = c;
+            via[node] = edge;
+        }
+
+        boolean isReached(int node) {
+            return reached[node] == search;
+        }
+    }
+
+    /**
+     * The forward and backward searches of a query, kept by each thread which runs queries.
+     */
+    private static class QueryState {
+
+        private final Search forward;
+        private final Search backward;
+
+        QueryState(int nodeCount) {
+            forward = new Search(nodeCount);
+            backward = new Search(nodeCount);
+        }
+
+        void reset() {
+            forward.reset();
+            backward.reset();
+        }
+    }
+}
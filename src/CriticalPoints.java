@@ -0,0 +1,166 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The critical parts of the road network: the intersections (articulation points) and segments (bridges)
+ * which, if they were closed, would cut part of the network off from the rest. One way roads are ignored,
+ * so this is about the shape of the network rather than where you can drive.
+ *
+ * They are found with Hopcroft and Tarjan's depth first search, which numbers the nodes in the order they
+ * are found (disc) and works out the lowest number each node's subtree can reach by a segment which isn't
+ * in the search tree (low). The segment to a child is a bridge if the child's subtree can't get back any
+ * further than the child itself, and a node is an articulation point if a child's subtree can't get past it.
+ *
+ * A recursive search would overflow the stack on a big network (a long road is a very deep search), so
+ * the search keeps its own stack of nodes, and each node remembers how far through its segments it is.
+ * Everything is in primitive arrays indexed like the RoadGraph, and the whole thing takes linear time.
+ * Every component of the network gets its own search.
+ */
+public class CriticalPoints {
+
+    // Whether each node is an articulation point, and whether each segment is a bridge
+    private final boolean[] articulation;
+    private final boolean[] bridge;
+    // The indexes of the articulation points and bridges
+    private final int[] articulationPoints;
+    private final int[] bridges;
+    // How many separate pieces the network is in
+    private final int componentCount;
+
+    /**
+     * Constructor
+     *
+     * @param articulation - Whether each node is an articulation point
+     * @param bridge - Whether each segment is a bridge
+     * @param componentCount - How many separate pieces the network is in
+     */
+    public CriticalPoints(boolean[] articulation, boolean[] bridge, int componentCount) {
+        this.articulation = articulation;
+        this.bridge = bridge;
+        this.articulationPoints = indexes(articulation);
+        this.bridges = indexes(bridge);
+        this.componentCount = componentCount;
+    }
+
+    /**
+     * Finds the articulation points and bridges of a graph.
+     *
+     * @param graph - The road graph
+     * @return The critical intersections and segments
+     */
+    public static CriticalPoints find(RoadGraph graph) {
+        int nodeCount = graph.getNodeCount();
+        IntBuffer adjStart = graph.getAdjStart();
+        IntBuffer adjSegments = graph.getAdjSegments();
+        IntBuffer segNode1 = graph.getSegNode1();
+        IntBuffer segNode2 = graph.getSegNode2();
+
+        boolean[] articulation = new boolean[nodeCount];
+        boolean[] bridge = new boolean[graph.getSegmentCount()];
+
+        // The order each node was found in (0 if it hasn't been yet), and the lowest order its subtree can reach
+        int[] disc = new int[nodeCount];
+        int[] low = new int[nodeCount];
+        // The segment the search came into each node along, and how far through its segments the search is
+        int[] parentSeg = new int[nodeCount];
+        int[] next = new int[nodeCount];
+        // The path from the root to the node being searched
+        int[] stack = new int[nodeCount];
+
+        int time = 0;
+        int components = 0;
+        for(int root = 0; root < nodeCount; root++) {
+            if(disc[root] != 0) {continue;}
+            components++;
+
+            disc[root] = low[root] = ++time;
+            parentSeg[root] = -1;
+            next[root] = adjStart.get(root);
+            int top = 0;
+            stack[top++] = root;
+            int rootChildren = 0;
+
+            while(top > 0) {
+                int v = stack[top - 1];
+                if(next[v] < adjStart.get(v + 1)) {
+                    // Look at the next segment of v
+                    int s = adjSegments.get(next[v]++);
+                    if(s == parentSeg[v]) {continue;} // The way we came in (a second segment to the parent is fine)
+                    int w = segNode1.get(s) == v ? segNode2.get(s) : segNode1.get(s);
+                    if(w == v) {continue;} // A loop back to the same node doesn't matter
+
+                    if(disc[w] == 0) { // Go down to w
+                        disc[w] = low[w] = ++time;
+                        parentSeg[w] = s;
+                        next[w] = adjStart.get(w);
+                        stack[top++] = w;
+                        if(v == root) {rootChildren++;}
+                    } else if(disc[w] < low[v]) { // A way back up the tree
+                        low[v] = disc[w];
+                    }
+                } else {
+                    // Finished with v, so go back up to its parent
+                    top--;
+                    if(top == 0) {break;}
+                    int u = stack[top - 1];
+                    if(low[v] < low[u]) {low[u] = low[v];}
+                    if(low[v] > disc[u]) {bridge[parentSeg[v]] = true;}
+                    if(low[v] >= disc[u] && u != root) {articulation[u] = true;}
+                }
+            }
+
+            // The root is only an articulation point if the search had to start again from it
+            if(rootChildren > 1) {articulation[root] = true;}
+        }
+        return new CriticalPoints(articulation, bridge, components);
+    }
+
+    /**
+     * @return The indexes which are true
+     */
+    private static int[] indexes(boolean[] flags) {
+        int[] result = new int[flags.length];
+        int n = 0;
+        for(int i = 0; i < flags.length; i++) {
+            if(flags[i]) {result[n++] = i;}
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * @param node - The index of a node
+     * @return Whether closing the intersection would cut part of the network off
+     */
+    public boolean isArticulation(int node) {
+        return articulation[node];
+    }
+
+    /**
+     * @param segment - The index of a segment
+     * @return Whether closing the segment would cut part of the network off
+     */
+    public boolean isBridge(int segment) {
+        return bridge[segment];
+    }
+
+    /**
+     * @return The indexes of the articulation points, in order
+     */
+    public int[] getArticulationPoints() {
+        return articulationPoints;
+    }
+
+    /**
+     * @return The indexes of the bridges, in order
+     */
+    public int[] getBridges() {
+        return bridges;
+    }
+
+    /**
+     * @return How many separate pieces the network is in
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+}
@@ -25,6 +25,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.JToggleButton;
 import javax.swing.border.Border;
 import javax.swing.text.DefaultCaret;
 
@@ -108,6 +109,18 @@ public abstract class GUI {
 	protected abstract void onLoad(File nodes, File roads, File segments,
 			File polygons);
 
+	/**
+	 * Is called when the cancel button is pressed, to stop a load which is
+	 * still running.
+	 */
+	protected abstract void onCancel();
+
+	/**
+	 * Is called when the critical button is toggled, to turn highlighting of
+	 * the intersections and segments the network can't do without on or off.
+	 */
+	protected abstract void onCritical(boolean show);
+
 	// here are some useful methods you'll need.
 
 	/**
@@ -247,6 +260,13 @@ public abstract class GUI {
 			}
 		});
 
+		JButton cancel = new JButton("Cancel");
+		cancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent ev) {
+				onCancel();
+			}
+		});
+
 		JButton west = new JButton("\u2190");
 		west.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent ev) {
@@ -295,6 +315,15 @@ public abstract class GUI {
 			}
 		});
 
+		final JToggleButton critical = new JToggleButton("Critical");
+		critical.setToolTipText("Highlight the intersections and segments which would cut the network in two");
+		critical.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent ev) {
+				onCritical(critical.isSelected());
+				redraw();
+			}
+		});
+
 		// next, make the search box at the top-right. we manually fix
 		// it's size, and add an action listener to call your code when
 		// the user presses enter.
@@ -312,9 +341,8 @@ public abstract class GUI {
 			// user doesn't need to hit enter for results.
 			search.addKeyListener(new KeyAdapter() {
 				public void keyReleased(KeyEvent e) {
-					// don't fire an event on backspace or delete
-					if (e.getKeyCode() == 8 || e.getKeyCode() == 127)
-						return;
+					// backspace and delete fire an event too, the search
+					// steps back up the trie rather than starting again
 					search.postActionEvent();
 				}
 			});
@@ -341,11 +369,12 @@ public abstract class GUI {
 		controls.setBorder(edge);
 
 		JPanel loadquit = new JPanel();
-		loadquit.setLayout(new GridLayout(2, 1));
+		loadquit.setLayout(new GridLayout(3, 1));
 		// manually set a fixed size for the panel containing the load and quit
 		// buttons (doesn't change with window resize).
-		loadquit.setMaximumSize(new Dimension(50, 100));
+		loadquit.setMaximumSize(new Dimension(75, 100));
 		loadquit.add(load);
+		loadquit.add(cancel);
 		loadquit.add(quit);
 		controls.add(loadquit);
 		// rigid areas are invisible components that can be used to space
@@ -363,6 +392,8 @@ public abstract class GUI {
 		navigation.add(east);
 		controls.add(navigation);
 		controls.add(Box.createRigidArea(new Dimension(15, 0)));
+		controls.add(critical);
+		controls.add(Box.createRigidArea(new Dimension(15, 0)));
 		// glue is another invisible component that grows to take up all the
 		// space it can on resize.
 		controls.add(Box.createHorizontalGlue());
@@ -0,0 +1,383 @@
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A binary snapshot of a loaded map.
+ *
+ * The first time a directory is loaded the .tab files are parsed, and the resulting graph is
+ * "compiled" into a snapshot file next to them. Every load after that memory maps the snapshot,
+ * and the RoadGraph, QuadTree, RTree and SegmentLod use their arrays straight from the mapped file:
+ * nothing is parsed, copied or rebuilt except the Road objects and the Trie of their names.
+ *
+ * Locations are stored already converted from latitude/longitude, so no trigonometry is needed either.
+ *
+ * The file is a header followed by a list of sections, each of which is one of the arrays. A section is its
+ * length (the number of ints, doubles or bytes) and 4 bytes of padding, then the numbers, padded to a multiple of 8
+ * bytes so every section starts 8 byte aligned. Everything is in the machine's native byte order, so a snapshot
+ * from a machine with the other order has the wrong magic number and is just written again.
+ *  - header: magic, version, then the number of source files and the length and last modified time of each
+ *  - nodes: the RoadGraph's node IDs, x, y, and adjacency lists
+ *  - roads: the RoadGraph's road IDs, types, speed limits, classes, flags and segment lists, then the distinct
+ *    names and cities (where each one starts, and their UTF-8 bytes), and which of them each road's name and city is
+ *  - segments: the RoadGraph's segment roads, nodes, lengths and points
+ *  - indexes: the node QuadTree, the segment RTree, and each SegmentLod level after 0
+ *  - dangling segments (ones which refer to a missing road or node): (road id, node1 id, node2 id) for each
+ *
+ * The snapshot is only ever replaced (by moving a new file over it), never written to, so a map which is using
+ * the mapped file keeps working even if the snapshot is written again.
+ */
+public class GraphSnapshot {
+
+    // The name of the snapshot file, which lives in the same directory as the .tab files
+    public static final String FILENAME = "graph.snapshot";
+
+    // "RMAP", used to check that the file actually is a snapshot
+    private static final int MAGIC = 0x524D4150;
+    // Must be changed whenever the layout (or the number of SegmentLod levels) changes, so old snapshots get rebuilt
+    private static final int VERSION = 5;
+
+    /**
+     * Writes the map to a snapshot file. It is written to a temporary file first and then moved over the snapshot,
+     * so a write which is stopped part way through never leaves a half written snapshot behind.
+     *
+     * @param snapshot - The file to write to
+     * @param data - The map to write
+     * @param sources - The files the map was loaded from (used to tell when the snapshot is out of date)
+     * @throws IOException - If the file can't be written
+     */
+    public static void write(File snapshot, MapData data, File... sources) throws IOException {
+        File temp = File.createTempFile(snapshot.getName(), ".tmp", snapshot.getAbsoluteFile().getParentFile());
+        try {
+            writeTo(temp, data, sources);
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath()); // Only still there if something went wrong
+        }
+    }
+
+    /**
+     * Writes the map to a file, in the snapshot layout.
+     */
+    private static void writeTo(File file, MapData data, File... sources) throws IOException {
+        RoadGraph graph = data.getGraph();
+        List<Buffer> sections = new ArrayList<>();
+
+        // Nodes
+        sections.add(graph.getNodeIDs());
+        sections.add(graph.getNodeX());
+        sections.add(graph.getNodeY());
+        sections.add(graph.getAdjStart());
+        sections.add(graph.getAdjSegments());
+
+        // Roads, with each distinct name and city stored once
+        sections.add(graph.getRoadIDs());
+        sections.add(graph.getRoadType());
+        sections.add(graph.getRoadSpeed());
+        sections.add(graph.getRoadClass());
+        sections.add(graph.getRoadFlags());
+        sections.add(graph.getRoadSegStart());
+        sections.add(graph.getRoadSegments());
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int[] names = new int[data.getRoads().size()];
+        int[] cities = new int[data.getRoads().size()];
+        for(int i = 0; i < names.length; i++) {
+            Road r = data.getRoads().get(i);
+            names[i] = strings.computeIfAbsent(r.getRoadName(), s -> strings.size());
+            cities[i] = strings.computeIfAbsent(r.getRoadCity(), s -> strings.size());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int[] stringStart = new int[strings.size() + 1];
+        int n = 0;
+        for(String s : strings.keySet()) {
+            bytes.write(s.getBytes(StandardCharsets.UTF_8));
+            stringStart[++n] = bytes.size();
+        }
+        sections.add(IntBuffer.wrap(stringStart));
+        sections.add(ByteBuffer.wrap(bytes.toByteArray()));
+        sections.add(IntBuffer.wrap(names));
+        sections.add(IntBuffer.wrap(cities));
+
+        // Segments
+        sections.add(graph.getSegRoad());
+        sections.add(graph.getSegNode1());
+        sections.add(graph.getSegNode2());
+        sections.add(graph.getSegLength());
+        sections.add(graph.getCoordStart());
+        sections.add(graph.getCoordX());
+        sections.add(graph.getCoordY());
+
+        // Indexes
+        QuadTree nodeTree = data.getNodeTree();
+        sections.add(nodeTree.getOrder());
+        sections.add(nodeTree.getCells());
+        sections.add(nodeTree.getBoxes());
+        RTree segmentTree = data.getSegmentTree();
+        sections.add(segmentTree.getItemBoxes());
+        sections.add(segmentTree.getItems());
+        sections.add(segmentTree.getNodes());
+        sections.add(segmentTree.getBoxes());
+        sections.add(IntBuffer.wrap(new int[] {segmentTree.getLeafCount()}));
+        SegmentLod lod = data.getSegmentLod();
+        for(int l = 1; l < SegmentLod.TOLERANCES.length; l++) {
+            sections.add(lod.getStart(l));
+            sections.add(lod.getPoints(l));
+        }
+
+        // Dangling segments
+        int[] dangling = new int[data.getDanglingSegments().size() * 3];
+        for(int i = 0; i < dangling.length; i += 3) {
+            System.arraycopy(data.getDanglingSegments().get(i / 3), 0, dangling, i, 3);
+        }
+        sections.add(IntBuffer.wrap(dangling));
+
+        try(FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Header
+            ByteBuffer header = ByteBuffer.allocate(12 + 4 + 16 * sources.length).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(sources.length);
+            header.putInt(0); // Padding
+            for(File f : sources) {
+                header.putLong(f.length());
+                header.putLong(f.lastModified());
+            }
+            writeFully(out, header);
+
+            for(Buffer section : sections) {
+                writeSection(out, section);
+            }
+        }
+    }
+
+    /**
+     * Writes one of the arrays as a section: its length, padding, then its numbers padded to a multiple of 8 bytes.
+     */
+    private static void writeSection(FileChannel out, Buffer section) throws IOException {
+        int size = section instanceof IntBuffer ? Integer.BYTES : section instanceof DoubleBuffer ? Double.BYTES : 1;
+        ByteBuffer buf = ByteBuffer.allocate(8 + padded((long) section.limit() * size)).order(ByteOrder.nativeOrder());
+        buf.putInt(section.limit());
+        buf.putInt(0); // Padding
+        // Copy from a duplicate, as the arrays might be in use (and positions aren't shared between threads)
+        if(section instanceof IntBuffer) {
+            IntBuffer src = ((IntBuffer) section).duplicate();
+            src.rewind();
+            buf.asIntBuffer().put(src);
+        } else if(section instanceof DoubleBuffer) {
+            DoubleBuffer src = ((DoubleBuffer) section).duplicate();
+            src.rewind();
+            buf.asDoubleBuffer().put(src);
+        } else {
+            ByteBuffer src = ((ByteBuffer) section).duplicate();
+            src.rewind();
+            buf.put(src);
+        }
+        writeFully(out, buf);
+    }
+
+    /**
+     * Writes all of a buffer (from the start), as a channel may only write part of it at a time.
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.clear();
+        while(buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /**
+     * @return A number of bytes rounded up to a multiple of 8
+     * @throws IllegalArgumentException - If that is too big for a buffer
+     */
+    private static int padded(long bytes) {
+        long padded = (bytes + 7) & ~7L;
+        if(padded > Integer.MAX_VALUE - 8) {throw new IllegalArgumentException("A section of " + bytes + " bytes is too big");}
+        return (int) padded;
+    }
+
+    /**
+     * Reads a map from a snapshot file, by memory mapping it.
+     *
+     * @param snapshot - The snapshot file
+     * @param progress - Told when each part of the map has been read, and checked for cancellation
+     * @param sources - The files the map would otherwise be loaded from (nodes, roads, then segments)
+     * @return The map, or null if there is no snapshot or it is out of date (wrong version, or the sources have changed)
+     *         or doesn't make sense (cut short, or any of the arrays are the wrong length)
+     * @throws IOException - If the file can't be read
+     */
+    public static MapData read(File snapshot, LoadProgress progress, File... sources) throws IOException {
+        if(!snapshot.isFile()) {return null;}
+
+        try(FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            // The mapping (and the arrays which use it) stays valid after the channel is closed
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf.order(ByteOrder.nativeOrder());
+
+            // Check the header
+            if(buf.remaining() < 16 || buf.getInt() != MAGIC || buf.getInt() != VERSION) {return null;}
+            if(buf.getInt() != sources.length) {return null;}
+            buf.getInt(); // Padding
+            for(File f : sources) {
+                if(buf.getLong() != f.length() || buf.getLong() != f.lastModified()) {return null;}
+            }
+            Sections in = new Sections(buf);
+
+            // Nodes
+            IntBuffer nodeIDs = in.ints();
+            DoubleBuffer nodeX = in.doubles();
+            DoubleBuffer nodeY = in.doubles();
+            IntBuffer adjStart = in.ints();
+            IntBuffer adjSegments = in.ints();
+            progress.update(sources[0], sources[0].length(), nodeIDs.limit());
+            progress.checkCancelled();
+
+            // Roads
+            IntBuffer roadIDs = in.ints();
+            IntBuffer roadType = in.ints();
+            IntBuffer roadSpeed = in.ints();
+            IntBuffer roadClass = in.ints();
+            ByteBuffer roadFlags = in.bytes();
+            IntBuffer roadSegStart = in.ints();
+            IntBuffer roadSegments = in.ints();
+            String[] strings = readStrings(in.ints(), in.bytes());
+            IntBuffer names = in.ints();
+            IntBuffer cities = in.ints();
+            progress.update(sources[1], sources[1].length(), roadIDs.limit());
+            progress.checkCancelled();
+
+            // Segments
+            IntBuffer segRoad = in.ints();
+            IntBuffer segNode1 = in.ints();
+            IntBuffer segNode2 = in.ints();
+            DoubleBuffer segLength = in.doubles();
+            IntBuffer coordStart = in.ints();
+            DoubleBuffer coordX = in.doubles();
+            DoubleBuffer coordY = in.doubles();
+            RoadGraph graph = new RoadGraph(nodeIDs, nodeX, nodeY, adjStart, adjSegments,
+                    segRoad, segNode1, segNode2, segLength, coordStart, coordX, coordY,
+                    roadIDs, roadType, roadSpeed, roadClass, roadFlags, roadSegStart, roadSegments);
+            progress.update(sources[2], sources[2].length(), segLength.limit());
+
+            // The roads, from the graph's arrays and the names
+            if(names.limit() != graph.getRoadCount() || cities.limit() != graph.getRoadCount()) {
+                throw new IllegalArgumentException("There are " + names.limit() + " road names, not " + graph.getRoadCount());
+            }
+            List<Road> roads = new ArrayList<>(graph.getRoadCount());
+            for(int r = 0; r < graph.getRoadCount(); r++) {
+                roads.add(new Road(roadIDs.get(r), roadType.get(r), strings[names.get(r)], strings[cities.get(r)],
+                        graph.roadHas(r, RoadGraph.ONEWAY), roadSpeed.get(r), roadClass.get(r),
+                        graph.roadHas(r, RoadGraph.NOT_FOR_CAR), graph.roadHas(r, RoadGraph.NOT_FOR_PEDE),
+                        graph.roadHas(r, RoadGraph.NOT_FOR_BICY)));
+            }
+
+            // Indexes
+            QuadTree nodeTree = new QuadTree(nodeX, nodeY, in.ints(), in.ints(), in.doubles());
+            DoubleBuffer itemBoxes = in.doubles();
+            IntBuffer items = in.ints();
+            IntBuffer treeNodes = in.ints();
+            DoubleBuffer treeBoxes = in.doubles();
+            IntBuffer leafCount = in.ints();
+            if(leafCount.limit() != 1) {throw new IllegalArgumentException("There are " + leafCount.limit() + " leaf counts, not 1");}
+            RTree segmentTree = new RTree(itemBoxes, items, treeNodes, treeBoxes, leafCount.get(0));
+            IntBuffer[] levelStart = new IntBuffer[SegmentLod.TOLERANCES.length - 1];
+            IntBuffer[] levelPoints = new IntBuffer[levelStart.length];
+            for(int l = 0; l < levelStart.length; l++) {
+                levelStart[l] = in.ints();
+                levelPoints[l] = in.ints();
+            }
+            SegmentLod lod = new SegmentLod(graph, levelStart, levelPoints);
+
+            // Dangling segments
+            IntBuffer danglingIDs = in.ints();
+            if(danglingIDs.limit() % 3 != 0) {throw new IllegalArgumentException(danglingIDs.limit() + " dangling segment IDs aren't in threes");}
+            List<int[]> dangling = new ArrayList<>(danglingIDs.limit() / 3);
+            for(int i = 0; i < danglingIDs.limit(); i += 3) {
+                dangling.add(new int[] {danglingIDs.get(i), danglingIDs.get(i + 1), danglingIDs.get(i + 2)});
+            }
+
+            MapData data = new MapData(graph, roads, nodeTree, segmentTree, lod);
+            data.setDanglingSegments(dangling);
+            return data;
+        } catch(CancellationException e) {
+            throw e;
+        } catch(RuntimeException e) {
+            // Anything that doesn't make sense (the file ends early, a length doesn't fit, an index is out of range...)
+            // means the snapshot is broken, so it will just be written again
+            return null;
+        }
+    }
+
+    /**
+     * Reads the distinct road names and cities.
+     *
+     * @param start - Where each string's bytes start (one longer than the number of strings)
+     * @param bytes - The UTF-8 bytes of all of the strings
+     */
+    private static String[] readStrings(IntBuffer start, ByteBuffer bytes) {
+        byte[] all = new byte[bytes.limit()];
+        bytes.get(all);
+        String[] strings = new String[Math.max(start.limit() - 1, 0)];
+        for(int i = 0; i < strings.length; i++) {
+            strings[i] = new String(all, start.get(i), start.get(i + 1) - start.get(i), StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Reads the sections of a mapped snapshot one after another, as buffers which use the file directly.
+     */
+    private static class Sections {
+
+        private final ByteBuffer buf;
+
+        Sections(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        IntBuffer ints() {
+            return next(Integer.BYTES).asIntBuffer();
+        }
+
+        DoubleBuffer doubles() {
+            return next(Double.BYTES).asDoubleBuffer();
+        }
+
+        ByteBuffer bytes() {
+            return next(1);
+        }
+
+        /**
+         * Slices out the next section, and moves on to the one after it.
+         *
+         * @param size - The number of bytes in each of its numbers
+         * @throws IllegalArgumentException - If its length is negative, or it goes past the end of the file
+         */
+        private ByteBuffer next(int size) {
+            int count = buf.getInt();
+            buf.getInt(); // Padding
+            long bytes = (long) count * size;
+            if(count < 0 || bytes > buf.remaining()) {
+                throw new IllegalArgumentException("A section of " + count + " doesn't fit in the " + buf.remaining() + " bytes left");
+            }
+            ByteBuffer section = buf.slice();
+            section.limit((int) bytes);
+            section.order(ByteOrder.nativeOrder());
+            buf.position(buf.position() + (int) Math.min(padded(bytes), buf.remaining()));
+            return section;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Everything which can be reached from a node within a budget (usually a travel time), found by the RoutePlanner.
+ * Segments are indexes into the RoadGraph, and each has the cost at which it is first reached.
+ */
+public class Isochrone {
+
+    // The most cost allowed
+    private final double budget;
+    // The reachable segments, and the cost at which each one is reached (in the same order)
+    private final int[] segments;
+    private final double[] times;
+    // How many nodes are within the budget
+    private final int nodeCount;
+
+    /**
+     * Constructor
+     *
+     * @param budget - The most cost allowed
+     * @param segments - The reachable segments
+     * @param times - The cost at which each segment is reached
+     * @param nodeCount - How many nodes are within the budget
+     */
+    public Isochrone(double budget, int[] segments, double[] times, int nodeCount) {
+        this.budget = budget;
+        this.segments = segments;
+        this.times = times;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @return The most cost allowed
+     */
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The reachable segments
+     */
+    public int[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return The cost at which each segment is reached (in the same order as getSegments())
+     */
+    public double[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return How many nodes are within the budget
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+}
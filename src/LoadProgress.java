@@ -0,0 +1,101 @@
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps track of how far through loading a map we are (bytes read and records parsed, for each file),
+ * and whether the load has been cancelled.
+ *
+ * It is updated from whichever threads are doing the loading, so all of the counters are atomic.
+ */
+public class LoadProgress {
+
+    // The files being loaded, and their sizes
+    private final File[] files;
+    private final long[] totalBytes;
+
+    // How far through each file we are
+    private final AtomicLongArray bytesRead;
+    private final AtomicIntegerArray records;
+
+    // Set when the user cancels the load
+    private volatile boolean cancelled = false;
+
+    // Called whenever the progress changes
+    private volatile Runnable listener;
+
+    /**
+     * Constructor
+     *
+     * @param files - The files which are being loaded
+     */
+    public LoadProgress(File... files) {
+        this.files = files;
+        this.totalBytes = new long[files.length];
+        for(int i = 0; i < files.length; i++) {
+            totalBytes[i] = files[i].length();
+        }
+        this.bytesRead = new AtomicLongArray(files.length);
+        this.records = new AtomicIntegerArray(files.length);
+    }
+
+    /**
+     * Adds to the progress of one of the files.
+     *
+     * @param f - The file
+     * @param bytes - The number of bytes which have just been read
+     * @param count - The number of records which have just been parsed
+     */
+    public void update(File f, long bytes, int count) {
+        for(int i = 0; i < files.length; i++) {
+            if(files[i].equals(f)) {
+                bytesRead.addAndGet(i, bytes);
+                records.addAndGet(i, count);
+            }
+        }
+        Runnable l = listener;
+        if(l != null) {l.run();}
+    }
+
+    /**
+     * Throws a CancellationException if the load has been cancelled. The loading code calls this
+     * regularly, so that it stops soon after the user cancels.
+     */
+    public void checkCancelled() {
+        if(cancelled) {throw new CancellationException("Load cancelled");}
+    }
+
+    /**
+     * Cancel the load
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return Whether or not the load has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @param listener - Called (on a loading thread) whenever the progress changes
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return A printable description of the progress, one line per file
+     */
+    public String toString() {
+        StringBuilder s = new StringBuilder("Loading...");
+        for(int i = 0; i < files.length; i++) {
+            s.append(String.format("%n%s: %d / %d KB, %d records",
+                    files[i].getName(), bytesRead.get(i) / 1024, totalBytes[i] / 1024, records.get(i)));
+        }
+        return s.toString();
+    }
+}
@@ -1,4 +1,5 @@
 import java.awt.Point;
+import java.nio.DoubleBuffer;
 
 /**
  * A Location is a point in a 2D coordinate system, with increasing x from west
@@ -57,6 +58,34 @@ public class Location {
 		return new Point(u, v);
 	}
 
+	/**
+	 * The x part of asPoint, without making a Point.
+	 */
+	public int screenX(Location origin, double scale) {
+		return (int) ((x - origin.x) * scale);
+	}
+
+	/**
+	 * The y part of asPoint, without making a Point.
+	 */
+	public int screenY(Location origin, double scale) {
+		return (int) ((origin.y - y) * scale);
+	}
+
+	/**
+	 * Does the same as asPoint for lots of locations at once, without making
+	 * any objects. The locations are xs[from..to-1] and ys[from..to-1], and
+	 * the pixel positions are written to u[0..] and v[0..].
+	 */
+	public static void project(DoubleBuffer xs, DoubleBuffer ys, int from, int to,
+			Location origin, double scale, int[] u, int[] v) {
+		double ox = origin.x, oy = origin.y;
+		for (int i = from, j = 0; i < to; i++, j++) {
+			u[j] = (int) ((xs.get(i) - ox) * scale);
+			v[j] = (int) ((oy - ys.get(i)) * scale);
+		}
+	}
+
 	/**
 	 * Create a new Location object from a given Point object, as well as the
 	 * origin and scale. This is effectively the opposite of the asPoint method.
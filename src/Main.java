@@ -4,12 +4,9 @@ import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.io.*;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Stream;
-import java.util.stream.Collectors;
-import java.util.Arrays;
-import java.util.function.*;
-import java.util.Map;
 
 /**
  * A mapping class, which puts a map (loaded from a file) onto the screen.
@@ -18,11 +15,16 @@ import java.util.Map;
  */
 public class Main extends GUI {
 
-    // Collections of the roads, nodes, and segments
-    private Map<Integer, Road> roadMap;
-    private Map<Integer, Node> nodeMap;
-    private List<Segment> segmentList;
-    private Trie<Road> roadTrie;
+    // The roads, nodes, and segments (and the Trie of roads). Replaced all at once when a new map is loaded.
+    private MapData map;
+    // Draws the map, from cached tiles
+    private TileCache tiles;
+
+    // The load which is currently running (null if there isn't one)
+    private MapLoader loader;
+
+    // Runs searches in the background
+    private final RoadSearch roadSearch = new RoadSearch(this::showRoads);
 
     // The Origin location
     private Location origin = Location.newFromLatLon(-36.847622, 174.763444 );
@@ -37,6 +39,34 @@ public class Main extends GUI {
     // The highlighted segments;
     private List<Road> highlightR;
 
+    // The segments of the highlighted route (null if there isn't one)
+    private List<Segment> highlightRoute;
+
+    // The colour highlighted things are drawn in
+    private static final Color HIGHLIGHT_COLOUR = Color.RED;
+
+    // The profiles used for clicks, kept so that what they work out about the graph is only worked out once
+    private static final RouteProfile FASTEST_CAR = RouteProfile.fastest(RouteProfile.Mode.CAR);
+    private static final RouteProfile SHORTEST_CAR = RouteProfile.shortest(RouteProfile.Mode.CAR);
+
+    // How far an isochrone reaches (in minutes by car), and the colours from just left (green) to the limit (red)
+    private static final double ISOCHRONE_MINUTES = 10;
+    private static final Color[] ISOCHRONE_COLOURS = new Color[16];
+    static {
+        for(int i = 0; i < ISOCHRONE_COLOURS.length; i++) {
+            ISOCHRONE_COLOURS[i] = Color.getHSBColor(0.33f * (1 - i / (float) (ISOCHRONE_COLOURS.length - 1)), 1, 0.85f);
+        }
+    }
+
+    // The isochrone being shown (null if there isn't one)
+    private Isochrone isochrone;
+
+    // Whether the critical intersections and segments are being shown, and where they are (null until they are found)
+    private boolean showCritical = false;
+    private CriticalPoints critical;
+    private static final Color CRITICAL_SEGMENT_COLOUR = new Color(255, 140, 0);
+    private static final Color CRITICAL_NODE_COLOUR = Color.MAGENTA;
+
     // The x and y of a mouse press or drag
     private int dragInitX;
     private int dragInitY;
@@ -66,64 +96,98 @@ public class Main extends GUI {
      *            a File for polygon-shapes.mp
      */
     protected void onLoad(File nodes, File roads, File segments, File polygons) {
+        // Only one load at a time
+        onCancel();
 
-        // Reset some variables
-        origin = Location.newFromLatLon(-36.847622, 174.763444 );
-        scale = 90;
-        zoomFactor = 1;
-        highlightN = null;
-        highlightR = null;
-
-
-        // Streams the lines of the file into Nodes, which are put into a map (node
-        nodeMap = getStream(nodes).map(array ->
-                new Node(Integer.parseInt(array[0]), Double.parseDouble(array[1]), Double.parseDouble(array[2])))
-                .collect(Collectors.toMap(node->node.getNodeID(), Function.identity()));
-
-        // Stream the roads file
-        roadMap = getStream(roads).skip(1).map(array ->
-                new Road(Integer.parseInt(array[0]), Integer.parseInt(array[1]), array[2], array[3], array[4].equals("1"), Integer.parseInt(array[5]), array[6].equals("1"), array[7].equals("1"), array[8].equals("1")))
-                .collect(Collectors.toMap(road->road.getRoadID(), Function.identity()));
+        // Load in the background. The old map stays on screen until the new one is ready.
+        loader = new MapLoader(nodes, roads, segments, polygons, this::setMap, this::showLoadMessage);
+        loader.execute();
+    }
 
-        // Stream the segments file
-        // The Arrays.copyOfRange() splits the array so that it's made up of anything from the beginning of the lat/long onwards.
-        segmentList = getStream(segments).skip(1).map(array ->
-                new Segment(roadMap.get(Integer.parseInt(array[0])), Double.parseDouble(array[1]), nodeMap.get(Integer.parseInt(array[2])), nodeMap.get(Integer.parseInt(array[3])), Arrays.copyOfRange(array, 4, array.length)))
-                .collect(Collectors.toList());
+    /**
+     * Is called when the cancel button is pressed. Stops the current load, if there is one.
+     */
+    protected void onCancel() {
+        if(loader != null) {
+            if(!loader.isDone()) {getTextOutputArea().setText("Load cancelled");}
+            loader.cancelLoad();
+            loader = null;
+        }
+    }
 
-        // Add a reference for each segment for the road and nodes that it is connected to.
-        for(Segment s : segmentList) {
-            s.getRoad().getSegmentList().add(s);
-            s.getNode1().getSegmentList().add(s);
-            s.getNode2().getSegmentList().add(s);
+    /**
+     * Shows a progress or error message from a MapLoader, if it is still the current one.
+     *
+     * @param from - The loader the message is from
+     * @param message - The message
+     */
+    private void showLoadMessage(MapLoader from, String message) {
+        if(from == loader) {
+            getTextOutputArea().setText(message);
         }
+    }
 
-        //TODO: Polygons!
+    /**
+     * Is called when the critical button is toggled. Finds the critical intersections and segments
+     * (the first time they are shown for a map) and prints how many there are.
+     *
+     * @param show - Whether to highlight them
+     */
+    protected void onCritical(boolean show) {
+        showCritical = show;
+        if(show && map != null) {
+            findCritical();
+        }
+    }
 
-        // Add roads to the Trie
-        roadTrie = new Trie<Road>();
-        roadMap.keySet().stream()
-                .map(k->roadMap.get(k))
-                .forEach(r -> roadTrie.add(r.getRoadName(), r));
+    /**
+     * Finds the articulation points and bridges of the map, if they haven't been found already, and prints a summary.
+     */
+    private void findCritical() {
+        long start = System.nanoTime();
+        if(critical == null) {
+            critical = CriticalPoints.find(map.getGraph());
+        }
+        getTextOutputArea().setText(String.format("Critical: %d intersections and %d segments would cut the network " +
+                        "in two if they were closed. Separate pieces of network: %d. Found in %d ms.",
+                critical.getArticulationPoints().length, critical.getBridges().length, critical.getComponentCount(),
+                (System.nanoTime() - start) / 1000000));
     }
 
     /**
-     * Opens the specified file, and returns a stream of its lines.
+     * Swaps in a newly loaded map, and resets the view.
+     * This is called on the event dispatch thread once the MapLoader has finished. A map from an old loader
+     * (one which was cancelled, or replaced by a newer load, but finished anyway) is ignored.
      *
-     * @param f - The file object which is being opened
-     * @return A stream of the lines in the file, split using "\t" as the delimiter
+     * @param from - The loader the map is from
+     * @param data - The new map
      */
-    private Stream<String[]> getStream(File f) {
-        // https://docs.oracle.com/javase/tutorial/essential/exceptions/tryResourceClose.html
-        try { // Read the file (doing it this way makes it auto close when the function returns)
-            BufferedReader reader = new BufferedReader(new FileReader(f));
-            return reader.lines().map(line -> line.split("\t")); // Currently a stream of the split lines.
-
-        } catch(FileNotFoundException e) { // It should (hopefully) never fail
-            System.err.println("File Not Found: " + e.getMessage());
-            getTextOutputArea().setText("File Not Found: " + e.getMessage());
+    private void setMap(MapLoader from, MapData data) {
+        if(from != loader) {return;}
+
+        // Reset some variables
+        origin = Location.newFromLatLon(-36.847622, 174.763444 );
+        scale = 90;
+        zoomFactor = 1;
+        highlightN = null;
+        highlightR = null;
+        highlightRoute = null;
+        isochrone = null;
+        critical = null;
+
+        roadSearch.cancel(); // Any search in progress is for the old map
+        map = data;
+        tiles = new TileCache(new MapRenderer(map));
+        loader = null;
+
+        getTextOutputArea().setText("Loaded " + map.getGraph().getNodeCount() + " intersections, " +
+                map.getRoads().size() + " roads and " + map.getGraph().getSegmentCount() + " segments." +
+                (map.getPolygons() == null ? "" : " Filled " + map.getPolygons().getCount() + " areas.") +
+                (map.getStats() == null ? "" : "\n" + map.getStats().summary()));
+        if(showCritical) {
+            findCritical();
         }
-        return null;
+        redraw();
     }
 
     /**
@@ -131,17 +195,77 @@ public class Main extends GUI {
      *
      * @param g - The graphics object
      */
-    protected void redraw(Graphics g) { // TODO: Only draw onscreen things.
+    protected void redraw(Graphics g) {
         // Don't draw if we have no map
-        if(segmentList == null) {return;}
+        if(map == null) {return;}
 
-        // Draw segments
-        segmentList.forEach(segment -> segment.draw(g, origin, scale));
+        // Draw the map
+        Dimension d = getDrawingAreaDimension();
+        tiles.draw(g, origin, scale, d.width, d.height);
 
-        // Draw the nodes
-        nodeMap.keySet().stream().map(key -> nodeMap.get(key)).forEach(node -> node.draw(g, origin, scale));
+        // Draw the highlighted things over the top (so the tiles don't need to change)
+        if(showCritical && critical != null) {
+            drawCritical(g, d);
+        }
+        if(isochrone != null) {
+            int[] segments = isochrone.getSegments();
+            double[] times = isochrone.getTimes();
+            int last = ISOCHRONE_COLOURS.length - 1;
+            for(int i = 0; i < segments.length; i++) {
+                int colour = (int) Math.min(last, times[i] / isochrone.getBudget() * last);
+                map.getSegment(segments[i]).draw(g, origin, scale, ISOCHRONE_COLOURS[colour]);
+            }
+        }
+        if(highlightR != null) {
+            for(Road r : highlightR) {
+                for(Segment s : map.getSegments(r)) {
+                    s.draw(g, origin, scale, HIGHLIGHT_COLOUR);
+                }
+            }
+        }
+        if(highlightRoute != null) {
+            for(Segment s : highlightRoute) {
+                s.draw(g, origin, scale, HIGHLIGHT_COLOUR);
+            }
+        }
+        if(highlightN != null) {
+            highlightN.draw(g, origin, scale, HIGHLIGHT_COLOUR);
+        }
+    }
 
-        //Highlighted:
+    /**
+     * Draws the critical segments and intersections which are on screen.
+     *
+     * @param g - The graphics object
+     * @param d - The size of the drawing area
+     */
+    private void drawCritical(Graphics g, Dimension d) {
+        double left = origin.x, top = origin.y;
+        double right = origin.x + d.width / scale, bottom = origin.y - d.height / scale;
+        map.getSegmentTree().query(left, bottom, right, top, s -> {
+            if(critical.isBridge(s)) {
+                map.getSegment(s).draw(g, origin, scale, CRITICAL_SEGMENT_COLOUR);
+            }
+        });
+
+        double margin = Node.SIZE / scale;
+        DoubleBuffer nodeX = map.getGraph().getNodeX();
+        DoubleBuffer nodeY = map.getGraph().getNodeY();
+        g.setColor(CRITICAL_NODE_COLOUR);
+        map.getNodeTree().inRect(left - margin, bottom - margin, right + margin, top + margin, i -> {
+            if(critical.isArticulation(i)) {
+                int x = (int) ((nodeX.get(i) - origin.x) * scale);
+                int y = (int) ((origin.y - nodeY.get(i)) * scale);
+                g.fillOval(x - Node.SIZE / 2, y - Node.SIZE / 2, Node.SIZE, Node.SIZE);
+            }
+        });
+    }
+
+    /**
+     * Prints information about the highlighted intersection or roads to the output area.
+     * This is done when the highlight changes, rather than on every redraw.
+     */
+    private void printHighlighted() {
         if(highlightN != null) { // Return if there is no highlighted node
             Object[] rNames = highlightN.getSegmentList().stream().map(s -> s.getRoad()).map(r -> r.getRoadName()).distinct().toArray(); // Get an array of all the road names attached to the node
             String nodeDesc = "Intersection ID: " + highlightN.getNodeID() + "\nRoads:";
@@ -157,7 +281,7 @@ public class Main extends GUI {
                             " | Road Name: " + r.getRoadName() +
                             " | City: " + r.getRoadCity() +
                             " | Speed Limit: " + r.getSpeedLimitText() +
-                            " | Road Type: " + r.getRoadClass() +
+                            " | Road Type: " + r.getRoadClassText() +
                             " | One Way: " + ((r.getOneway()) ? "Yes" : "No ") +
                             " | " + r.getCarPedeBike() +
                             "\n";
@@ -231,58 +355,148 @@ public class Main extends GUI {
      * JTextField object that is the search box itself.
      */
     protected void onSearch() {
+        if(map == null) {return;}
+        // Search in the background, showRoads() is called with the results
+        roadSearch.search(map.getRoadTrie(), getSearchBox().getText());
+    }
+
+    /**
+     * Highlights the roads found by a search (all at once), and prints their information.
+     * This is called on the event dispatch thread by the RoadSearch.
+     *
+     * @param roads - The roads which were found (null if there weren't any)
+     */
+    private void showRoads(List<Road> roads) {
         // Unhighlight everything
-        if(highlightR != null) {
-            highlightR.stream().forEach(r->r.getSegmentList().stream().forEach(s->s.highlight()));
-        }
-        // Get the search
-        String search = getSearchBox().getText();
-        // Get the road
-        highlightR = roadTrie.getAll(search);
+        clearRoute();
+        isochrone = null;
+        highlightR = roads;
         if(highlightR == null) {
+            printHighlighted();
+            redraw();
             return;
         }
-        if (highlightR.stream().map(r->r.getRoadName()).anyMatch(s->s.equals(search))) {
-            highlightR = roadTrie.get(search);
-        }
-        // Highlight the new road
-        highlightR.stream().forEach(r->r.getSegmentList().stream().forEach(s->s.highlight()));
         // Remove highlighted nodes
-        if(highlightN != null) { highlightN.highlight(); }
         highlightN = null;
-        //TODO : Print out the rest of the useful info?
+        printHighlighted();
+        redraw();
     }
 
     /**
      * Is called when the mouse is clicked (actually, when the mouse is
      * released), and is passed the MouseEvent object for that click.
+     * Shift clicking finds the fastest route by car from the highlighted intersection (shift control clicking
+     * finds the shortest one instead), and control clicking shows everything within ISOCHRONE_MINUTES of the intersection by car.
      */
     protected void onClick(MouseEvent m) {
-        // Get the click point
-        Point click = new Point(m.getX(), m.getY());
-
-        // Find the closest noce
-        double lowest = 1000000;
-        Node closest = highlightN;
-        for(int n : nodeMap.keySet()) {
-            Node node = nodeMap.get(n);
-            double dist = node.getDist(click, origin, scale);
-            if(dist < lowest) {
-                lowest = dist;
-                closest = node;
-            }
+        if(map == null) {return;}
+        // Get the click point, as a location on the map
+        Location click = Location.newFromPoint(new Point(m.getX(), m.getY()), origin, scale);
+
+        // Find the closest node
+        int nearest = map.getNodeTree().nearest(click.x, click.y);
+        if(nearest < 0) {return;}
+        Node closest = map.getNode(nearest);
+
+        if(m.isShiftDown() && highlightN != null) {
+            showRoute(highlightN, nearest, m.isControlDown());
+            return;
         }
 
-        // highlight that node and unhighlight the old one
-        closest.highlight();
-        if(highlightN != null) { highlightN.highlight(); }
+        // highlight that node instead of the old one
         highlightN = closest;
-        if(highlightR != null) {
-            highlightR.stream().forEach(r->r.getSegmentList().stream().forEach(s->s.highlight()));
-            highlightR = null;
+        highlightR = null;
+        clearRoute();
+        printHighlighted();
+
+        isochrone = null;
+        if(m.isControlDown()) {
+            showIsochrone(nearest);
         }
     }
 
+    /**
+     * Finds everything within ISOCHRONE_MINUTES of an intersection by car, to be drawn coloured by how long it takes to get there.
+     *
+     * @param start - The index of the intersection, in the RoadGraph
+     */
+    private void showIsochrone(int start) {
+        isochrone = map.getRoutePlanner().isochrone(start, FASTEST_CAR, ISOCHRONE_MINUTES);
+
+        double length = 0;
+        for(int s : isochrone.getSegments()) {
+            length += map.getGraph().getSegLength().get(s);
+        }
+        getTextOutputArea().setText(String.format("Within %.0f minutes of intersection %d: %d intersections, %d segments, %.2fkm of road",
+                ISOCHRONE_MINUTES, map.getGraph().getNodeIDs().get(start), isochrone.getNodeCount(), isochrone.getSegments().length, length));
+    }
+
+    /**
+     * Finds and highlights the fastest (or shortest) route by car between two intersections, and prints the roads along it.
+     * The contraction hierarchy is used if there is one. It doesn't know about banned turns, so if its route makes
+     * one, the turn expanded A* search finds the best route which doesn't. (A route which makes none is already
+     * the best one.) Without a hierarchy, the turn expanded search is used if the map has banned turns, or a plain
+     * A* search if it hasn't.
+     *
+     * @param start - The intersection to start at
+     * @param end - The index of the intersection to finish at, in the RoadGraph
+     * @param shortest - Whether to find the shortest route rather than the fastest
+     */
+    private void showRoute(Node start, int end, boolean shortest) {
+        RoadGraph graph = map.getGraph();
+        int from = start.getIndex();
+        RouteProfile profile = shortest ? SHORTEST_CAR : FASTEST_CAR;
+        ContractionHierarchy hierarchy = shortest ? map.getShortestHierarchy() : map.getFastestHierarchy();
+        TurnRestrictions restrictions = map.getRestrictions();
+        Route route;
+        if(hierarchy != null) {
+            route = hierarchy.route(from, end);
+            if(route != null && !restrictions.allows(graph, route)) {
+                route = map.getRoutePlanner().route(from, end, profile, restrictions);
+            }
+        } else if(restrictions.size() > 0) {
+            route = map.getRoutePlanner().route(from, end, profile, restrictions);
+        } else {
+            route = map.getRoutePlanner().route(from, end, profile);
+        }
+
+        // Replace whatever was highlighted with the route
+        highlightR = null;
+        clearRoute();
+        isochrone = null;
+        if(route == null) {
+            getTextOutputArea().setText("No route from intersection " + start.getNodeID() + " to intersection " + graph.getNodeIDs().get(end));
+            return;
+        }
+        highlightRoute = new ArrayList<Segment>();
+        for(int s : route.getSegments()) {
+            highlightRoute.add(map.getSegment(s));
+        }
+
+        // List the roads along the route, adding up the length of each one
+        String routeDesc = shortest ? String.format("Shortest route: %.2fkm\n", route.getLength())
+                : String.format("Fastest route: %.2fkm, %.1f minutes\n", route.getLength(), route.getCost());
+        String name = null;
+        double length = 0;
+        for(Segment s : highlightRoute) {
+            if(name != null && !name.equals(s.getRoad().getRoadName())) {
+                routeDesc += String.format("%s: %.2fkm\n", name, length);
+                length = 0;
+            }
+            name = s.getRoad().getRoadName();
+            length += s.getLength();
+        }
+        if(name != null) {routeDesc += String.format("%s: %.2fkm\n", name, length);}
+        getTextOutputArea().setText(routeDesc);
+    }
+
+    /**
+     * Unhighlights the route (if there is one).
+     */
+    private void clearRoute() {
+        highlightRoute = null;
+    }
+
     /**
      * Allows the user to scroll using the mouse wheel.
      * @param e - The MouseWheelEvent which describes the scrolling
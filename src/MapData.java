@@ -0,0 +1,297 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds everything that is loaded from a map directory (the graph of nodes and segments, and the roads),
+ * along with the indexes built from them. Keeping them together means a whole map can be built
+ * in one place (from the .tab files, or from a snapshot, on a background thread) and then handed
+ * over to Main in one go.
+ *
+ * The nodes and segments are only kept in the RoadGraph's arrays. getNode, getSegment and the segment lists
+ * make Node and Segment views of them as they are asked for.
+ */
+public class MapData {
+
+    // The nodes and segments, and the roads (by road index, which is in order of ID)
+    private RoadGraph graph;
+    private List<Road> roads;
+    private Trie<Road> roadTrie;
+
+    // Spatial index of the nodes (by RoadGraph node index)
+    private QuadTree nodeTree;
+    // Spatial index of the segments' bounding boxes (by segment index)
+    private RTree segmentTree;
+    // Simplified versions of the segments, for drawing when zoomed out
+    private SegmentLod segmentLod;
+    // Finds routes on the graph
+    private RoutePlanner routePlanner;
+    // Contraction hierarchies for fast car routes (shortest and fastest), made by the MapLoader after the rest
+    private ContractionHierarchy shortestHierarchy;
+    private ContractionHierarchy fastestHierarchy;
+    // The banned turns (none until the MapLoader sets them)
+    private TurnRestrictions restrictions;
+    // The filled areas (null if the directory doesn't have a polygons file)
+    private PolygonShapes polygons;
+    // The (road ID, node 1 ID, node 2 ID) of each segment in the file which refers to a road or node that
+    // doesn't exist. They aren't in the graph.
+    private List<int[]> danglingSegments = new ArrayList<>();
+    // Statistics about the network (null until the MapLoader works them out)
+    private NetworkStats stats;
+
+    /**
+     * Constructor
+     * Create the map data, and build the indexes.
+     *
+     * @param graph - The nodes and segments
+     * @param roads - The roads, in order of ID (so the same as the graph's road indexes)
+     */
+    public MapData(RoadGraph graph, List<Road> roads) {
+        this(graph, roads, new QuadTree(graph.getNodeX(), graph.getNodeY()), buildSegmentTree(graph), new SegmentLod(graph));
+    }
+
+    /**
+     * Constructor
+     * Create the map data from indexes which were built before (by a GraphSnapshot). Only the Trie is built.
+     *
+     * @param graph - The nodes and segments
+     * @param roads - The roads, in order of ID (so the same as the graph's road indexes)
+     * @param nodeTree - The quadtree of the graph's nodes
+     * @param segmentTree - The R-tree of the graph's segments
+     * @param segmentLod - The simplified versions of the graph's segments
+     */
+    public MapData(RoadGraph graph, List<Road> roads, QuadTree nodeTree, RTree segmentTree, SegmentLod segmentLod) {
+        this.graph = graph;
+        this.roads = Collections.unmodifiableList(roads);
+
+        // Add roads to the Trie. Searches list higher class roads first, then shorter names.
+        roadTrie = new Trie<Road>(r -> r.getRoadClass() * 100 - r.getRoadName().length());
+        roads.forEach(r -> roadTrie.add(r.getRoadName(), r));
+
+        this.nodeTree = nodeTree;
+        this.segmentTree = segmentTree;
+        this.segmentLod = segmentLod;
+        routePlanner = new RoutePlanner(graph);
+        restrictions = new TurnRestrictions(graph.getNodeCount(), new int[0], new int[0], new int[0], new int[0], new int[0], 0);
+    }
+
+    /**
+     * Builds an R-tree of the bounding box of each segment's points.
+     */
+    private static RTree buildSegmentTree(RoadGraph graph) {
+        int count = graph.getSegmentCount();
+        double[] minX = new double[count], minY = new double[count];
+        double[] maxX = new double[count], maxY = new double[count];
+        IntBuffer coordStart = graph.getCoordStart();
+        DoubleBuffer xs = graph.getCoordX(), ys = graph.getCoordY();
+
+        for(int s = 0; s < count; s++) {
+            minX[s] = minY[s] = Double.POSITIVE_INFINITY;
+            maxX[s] = maxY[s] = Double.NEGATIVE_INFINITY;
+            for(int c = coordStart.get(s); c < coordStart.get(s + 1); c++) {
+                minX[s] = Math.min(minX[s], xs.get(c));
+                minY[s] = Math.min(minY[s], ys.get(c));
+                maxX[s] = Math.max(maxX[s], xs.get(c));
+                maxY[s] = Math.max(maxY[s], ys.get(c));
+            }
+        }
+        return new RTree(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Sets the contraction hierarchies. These are built (or read) after the rest of the map, as they take longer.
+     *
+     * @param shortest - The hierarchy for the shortest routes by car
+     * @param fastest - The hierarchy for the fastest routes by car
+     */
+    public void setHierarchies(ContractionHierarchy shortest, ContractionHierarchy fastest) {
+        this.shortestHierarchy = shortest;
+        this.fastestHierarchy = fastest;
+    }
+
+    /**
+     * @param restrictions - The banned turns
+     */
+    public void setRestrictions(TurnRestrictions restrictions) {
+        this.restrictions = restrictions;
+    }
+
+    /**
+     * @param polygons - The filled areas
+     */
+    public void setPolygons(PolygonShapes polygons) {
+        this.polygons = polygons;
+    }
+
+    /**
+     * @param danglingSegments - The (road ID, node 1 ID, node 2 ID) of each segment which was left out because
+     *                         its road or one of its nodes doesn't exist
+     */
+    public void setDanglingSegments(List<int[]> danglingSegments) {
+        this.danglingSegments = danglingSegments;
+    }
+
+    /**
+     * @param stats - Statistics about the network
+     */
+    public void setStats(NetworkStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * @param index - The index of a node in the RoadGraph
+     * @return A view of the node
+     */
+    public Node getNode(int index) {
+        return new Node(this, index);
+    }
+
+    /**
+     * @param index - The index of a segment in the RoadGraph
+     * @return A view of the segment
+     */
+    public Segment getSegment(int index) {
+        return new Segment(this, index);
+    }
+
+    /**
+     * @param index - The index of a road in the RoadGraph
+     * @return The road
+     */
+    public Road getRoad(int index) {
+        return roads.get(index);
+    }
+
+    /**
+     * @return The roads, in order of ID
+     */
+    public List<Road> getRoads() {
+        return roads;
+    }
+
+    /**
+     * @return All of the segments, in RoadGraph order
+     */
+    public List<Segment> getSegmentList() {
+        return segmentView(null, 0, graph.getSegmentCount());
+    }
+
+    /**
+     * @param road - A road of this map
+     * @return The segments that make up the road
+     */
+    public List<Segment> getSegments(Road road) {
+        int r = graph.roadIndex(road.getRoadID());
+        return segmentView(graph.getRoadSegments(), graph.getRoadSegStart().get(r), graph.getRoadSegStart().get(r + 1));
+    }
+
+    /**
+     * Makes a list of Segment views of part of one of the RoadGraph's CSR arrays.
+     *
+     * @param segments - An array of segment indexes, or null for the segments themselves (in order)
+     * @param from - The first segment
+     * @param to - One past the last segment
+     * @return The list
+     */
+    List<Segment> segmentView(IntBuffer segments, int from, int to) {
+        return new AbstractList<Segment>() {
+            @Override
+            public Segment get(int i) {
+                if(i < 0 || i >= to - from) {throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());}
+                return getSegment(segments == null ? from + i : segments.get(from + i));
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    /**
+     * @return The Trie containing the roads, indexed by their names
+     */
+    public Trie<Road> getRoadTrie() {
+        return roadTrie;
+    }
+
+    /**
+     * @return The nodes and segments
+     */
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return The quadtree of node locations, which gives RoadGraph node indexes
+     */
+    public QuadTree getNodeTree() {
+        return nodeTree;
+    }
+
+    /**
+     * @return The R-tree of segment bounding boxes, which gives segment indexes
+     */
+    public RTree getSegmentTree() {
+        return segmentTree;
+    }
+
+    /**
+     * @return The simplified versions of the segments
+     */
+    public SegmentLod getSegmentLod() {
+        return segmentLod;
+    }
+
+    /**
+     * @return The route planner for the graph
+     */
+    public RoutePlanner getRoutePlanner() {
+        return routePlanner;
+    }
+
+    /**
+     * @return The contraction hierarchy for the shortest routes by car (null if it hasn't been made)
+     */
+    public ContractionHierarchy getShortestHierarchy() {
+        return shortestHierarchy;
+    }
+
+    /**
+     * @return The contraction hierarchy for the fastest routes by car (null if it hasn't been made)
+     */
+    public ContractionHierarchy getFastestHierarchy() {
+        return fastestHierarchy;
+    }
+
+    /**
+     * @return The banned turns
+     */
+    public TurnRestrictions getRestrictions() {
+        return restrictions;
+    }
+
+    /**
+     * @return The filled areas (null if there aren't any)
+     */
+    public PolygonShapes getPolygons() {
+        return polygons;
+    }
+
+    /**
+     * @return The (road ID, node 1 ID, node 2 ID) of each segment which was left out because its road or one of its nodes doesn't exist
+     */
+    public List<int[]> getDanglingSegments() {
+        return danglingSegments;
+    }
+
+    /**
+     * @return Statistics about the network (null if they haven't been worked out)
+     */
+    public NetworkStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import javax.swing.SwingWorker;
+
+/**
+ * Loads a map in the background, so the window keeps working (and keeps showing the old map) while it loads.
+ *
+ * Progress is passed back to the event dispatch thread as messages, and once everything has been
+ * built the whole new map is handed over in one go.
+ */
+public class MapLoader extends SwingWorker<MapData, String> {
+
+    // The files to load
+    private final File nodes;
+    private final File roads;
+    private final File segments;
+    private final File polygons;
+
+    // How far through loading we are
+    private final LoadProgress progress;
+
+    // Given this loader and the map once it has loaded
+    private final BiConsumer<MapLoader, MapData> onLoaded;
+    // Given this loader and progress and error messages
+    private final BiConsumer<MapLoader, String> onMessage;
+
+    /**
+     * Constructor
+     *
+     * @param nodes - a File for nodeID-lat-lon.tab
+     * @param roads - a File for roadID-roadInfo.tab
+     * @param segments - a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
+     * @param polygons - a File for polygon-shapes.mp (null if there isn't one)
+     * @param onLoaded - Given this loader and the map (on the event dispatch thread) once it has loaded, so an
+     *                 old load which finishes late can be told apart from the current one
+     * @param onMessage - Given this loader and progress and error messages (on the event dispatch thread)
+     */
+    public MapLoader(File nodes, File roads, File segments, File polygons,
+                     BiConsumer<MapLoader, MapData> onLoaded, BiConsumer<MapLoader, String> onMessage) {
+        this.nodes = nodes;
+        this.roads = roads;
+        this.segments = segments;
+        this.polygons = polygons;
+        this.onLoaded = onLoaded;
+        this.onMessage = onMessage;
+        this.progress = polygons == null ? new LoadProgress(nodes, roads, segments) : new LoadProgress(nodes, roads, segments, polygons);
+        this.progress.setListener(() -> publish(progress.toString()));
+    }
+
+    /**
+     * Loads the map. Uses the snapshot if there is an up to date one, otherwise parses the .tab files and writes a new snapshot.
+     */
+    @Override
+    protected MapData doInBackground() throws IOException {
+        File snapshot = new File(nodes.getParentFile(), GraphSnapshot.FILENAME);
+        File[] sources = {nodes, roads, segments};
+
+        MapData data = null;
+        try {
+            data = GraphSnapshot.read(snapshot, progress, sources);
+        } catch(IOException e) { // A broken snapshot just means we parse the files again
+            System.err.println("Could not read snapshot: " + e.getMessage());
+        }
+
+        if(data == null) {
+            data = TabLoader.load(nodes, roads, segments, progress);
+            progress.checkCancelled();
+            try {
+                GraphSnapshot.write(snapshot, data, sources);
+            } catch(IOException e) {
+                System.err.println("Could not write snapshot: " + e.getMessage());
+            }
+        }
+
+        // Banned turns, if the directory has any
+        File dir = nodes.getParentFile();
+        try {
+            data.setRestrictions(TurnRestrictions.load(new File(dir, TurnRestrictions.FILENAME), data.getGraph()));
+        } catch(IOException | NumberFormatException e) { // Routes just won't know about banned turns
+            System.err.println("Could not read restrictions: " + e.getMessage());
+        }
+
+        // Statistics about the network, which are also written out for comparing data drops
+        NetworkStats stats = new NetworkStats(data);
+        data.setStats(stats);
+        try {
+            stats.write(new File(dir, NetworkStats.FILENAME));
+        } catch(IOException e) { // The summary is still shown
+            System.err.println("Could not write network statistics: " + e.getMessage());
+        }
+
+        // Filled areas, if there are any. These aren't in the snapshot, as they are quick to parse.
+        if(polygons != null) {
+            try {
+                data.setPolygons(PolygonShapes.load(polygons, progress));
+            } catch(IOException | NumberFormatException e) { // The map just won't have any areas
+                System.err.println("Could not read polygons: " + e.getMessage());
+            }
+            progress.checkCancelled();
+        }
+
+        // Route hierarchies, which are also kept next to the .tab files once they have been built.
+        // They don't know about banned turns, so Main checks their routes against the restrictions.
+        data.setHierarchies(
+                loadHierarchy(new File(dir, "shortest" + ContractionHierarchy.EXTENSION), data, RouteProfile.shortest(RouteProfile.Mode.CAR), sources),
+                loadHierarchy(new File(dir, "fastest" + ContractionHierarchy.EXTENSION), data, RouteProfile.fastest(RouteProfile.Mode.CAR), sources));
+        return data;
+    }
+
+    /**
+     * Reads a contraction hierarchy if there is an up to date one, otherwise builds it and writes it out.
+     *
+     * @param file - The hierarchy file
+     * @param data - The map
+     * @param profile - The profile the hierarchy is for
+     * @param sources - The files the map was loaded from
+     * @return The hierarchy
+     */
+    private ContractionHierarchy loadHierarchy(File file, MapData data, RouteProfile profile, File[] sources) {
+        ContractionHierarchy ch = null;
+        try {
+            ch = ContractionHierarchy.read(file, data.getGraph(), profile, sources);
+        } catch(IOException e) { // A broken file just means we build it again
+            System.err.println("Could not read route hierarchy: " + e.getMessage());
+        }
+
+        if(ch == null) {
+            publish("Building route hierarchy " + file.getName() + "...");
+            ch = ContractionHierarchy.build(data.getGraph(), profile, progress);
+            try {
+                ch.write(file, sources);
+            } catch(IOException e) {
+                System.err.println("Could not write route hierarchy: " + e.getMessage());
+            }
+        }
+        progress.checkCancelled();
+        return ch;
+    }
+
+    /**
+     * Shows the latest progress message.
+     */
+    @Override
+    protected void process(List<String> messages) {
+        if(!isDone()) {
+            onMessage.accept(this, messages.get(messages.size() - 1));
+        }
+    }
+
+    /**
+     * Hands over the new map, or reports why there isn't one.
+     */
+    @Override
+    protected void done() {
+        try {
+            onLoaded.accept(this, get());
+        } catch(CancellationException e) {
+            onMessage.accept(this, "Load cancelled");
+        } catch(InterruptedException e) {
+            onMessage.accept(this, "Load interrupted");
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof CancellationException) {
+                onMessage.accept(this, "Load cancelled");
+            } else {
+                System.err.println("Could not load map: " + cause);
+                onMessage.accept(this, "Could not load map: " + cause.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the load. The old map stays on screen.
+     */
+    public void cancelLoad() {
+        progress.cancel();
+        cancel(false);
+    }
+}
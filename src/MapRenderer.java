@@ -0,0 +1,111 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Draws a loaded map (without any highlighting, which is drawn over the top by Main).
+ *
+ * Only the polygons, segments and nodes which are on screen are drawn (found with the MapData's R-tree and quadtree),
+ * and segments and polygons are drawn from the simplest level of detail which still looks right at the current scale.
+ *
+ * It only reads from the map, so several threads can use the same MapRenderer at once (with different Graphics).
+ */
+public class MapRenderer {
+
+    // The map being drawn
+    private final MapData map;
+
+    // Pixel positions of the line being drawn, one buffer for each drawing thread
+    private final ThreadLocal<PointBuffer> buffers = ThreadLocal.withInitial(PointBuffer::new);
+
+    // The filled areas as shapes, made as they are needed (null if the map doesn't have any)
+    private final PolygonPaths polygonPaths;
+
+    /**
+     * Constructor
+     *
+     * @param map - The map to draw
+     */
+    public MapRenderer(MapData map) {
+        this.map = map;
+        this.polygonPaths = map.getPolygons() == null ? null : new PolygonPaths(map.getPolygons());
+    }
+
+    /**
+     * Draws the part of the map which is on screen.
+     *
+     * @param g - The graphics object
+     * @param origin - The Location at the top left corner of the screen
+     * @param scale - The current scale of the map
+     * @param width - The width of the drawing area, in pixels
+     * @param height - The height of the drawing area, in pixels
+     */
+    public void draw(Graphics g, Location origin, double scale, int width, int height) {
+        // Work out which part of the map is on screen (the origin is the top left corner)
+        double left = origin.x;
+        double top = origin.y;
+        double right = origin.x + width / scale;
+        double bottom = origin.y - height / scale;
+
+        // Fill in the areas first, so the roads are drawn over them
+        if(polygonPaths != null) {
+            drawPolygons((Graphics2D) g, map.getPolygons(), origin, scale, left, bottom, right, top);
+        }
+
+        // Draw the segments which are on screen, at the right level of detail
+        SegmentLod lod = map.getSegmentLod();
+        int level = SegmentLod.levelFor(scale);
+        IntBuffer start = lod.getStart(level);
+        IntBuffer points = lod.getPoints(level);
+        DoubleBuffer xs = map.getGraph().getCoordX();
+        DoubleBuffer ys = map.getGraph().getCoordY();
+        PointBuffer buffer = buffers.get();
+        g.setColor(Color.BLACK);
+        map.getSegmentTree().query(left, bottom, right, top, s -> {
+            int from = start.get(s), to = start.get(s + 1);
+            buffer.project(xs, ys, points, from, to, origin, scale);
+            g.drawPolyline(buffer.getX(), buffer.getY(), to - from);
+        });
+
+        // Draw the nodes which are on screen (or close enough that part of their dot is)
+        double margin = Node.SIZE / scale;
+        DoubleBuffer nodeX = map.getGraph().getNodeX();
+        DoubleBuffer nodeY = map.getGraph().getNodeY();
+        g.setColor(Color.BLUE);
+        map.getNodeTree().inRect(left - margin, bottom - margin, right + margin, top + margin, i -> {
+            int x = (int) ((nodeX.get(i) - origin.x) * scale);
+            int y = (int) ((origin.y - nodeY.get(i)) * scale);
+            g.fillOval(x - Node.SIZE / 2, y - Node.SIZE / 2, Node.SIZE, Node.SIZE);
+        });
+    }
+
+    /**
+     * Fills the polygons which are on screen (and can be seen at this scale), a layer at a time.
+     * The cached shapes are in world pixels at their zoom level, so they are moved by the world pixel position
+     * of the origin, and scaled as well if the scale is between zoom levels (tiles are always drawn at one).
+     */
+    private void drawPolygons(Graphics2D g, PolygonShapes polygons, Location origin, double scale,
+                              double left, double bottom, double right, double top) {
+        AffineTransform transform = g.getTransform();
+        double shapeScale = PolygonPaths.shapeScale(scale);
+        if(shapeScale == scale) {
+            g.translate(-(int) Math.round(origin.x * scale), -(int) Math.round(-origin.y * scale));
+        } else {
+            g.translate(-origin.x * scale, origin.y * scale);
+            g.scale(scale / shapeScale, scale / shapeScale);
+        }
+        for(int layer = 0; layer < polygons.getLayerCount(); layer++) {
+            polygons.query(layer, left, bottom, right, top, scale, p -> {
+                g.setColor(polygons.getColour(p));
+                Shape shape = polygonPaths.get(p, scale);
+                if(shape instanceof Polygon) {
+                    g.fillPolygon((Polygon) shape);
+                } else {
+                    g.fill(shape);
+                }
+            });
+        }
+        g.setTransform(transform);
+    }
+}
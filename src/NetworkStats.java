@@ -0,0 +1,345 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Statistics about a loaded road network, for catching broken imports: how many separate pieces (connected
+ * components) it is in, how many segments meet at each intersection (the degree distribution), how much road
+ * there is of each class and speed limit, and anything which doesn't join up (intersections and roads with no
+ * segments, and segments which refer to a road or node that doesn't exist).
+ *
+ * The segments are split between the threads of a ForkJoinPool. Each task joins up the ends of its segments
+ * in a ConcurrentUnionFind (which the tasks all share, without locks) and adds up its own lengths, which are
+ * then added together as the tasks finish. Everything else is a single pass over the RoadGraph's arrays.
+ *
+ * The results can be written to a tab separated file (section, key, value on each line), so they can be
+ * compared from one data drop to the next by other tools.
+ */
+public class NetworkStats {
+
+    // The name of the statistics file, which is written next to the .tab files
+    public static final String FILENAME = "network-stats.tab";
+
+    // The most segments a task handles before it is split in two
+    private static final int SEGMENTS_PER_TASK = 1 << 14;
+
+    // The size of the network
+    private final int nodeCount;
+    private final int segmentCount;
+    private final int roadCount;
+    // How many separate pieces the network is in, and how many pieces there are of each size (in nodes)
+    private final int componentCount;
+    private final TreeMap<Integer, Integer> componentSizes;
+    // How many nodes have each number of segments
+    private final int[] degreeCounts;
+    // The total length of the segments (km) of each road class and each speed limit category
+    private final double[] classLength;
+    private final double[] speedLength;
+    // The IDs of the nodes and roads with no segments
+    private final int[] orphanNodes;
+    private final int[] orphanRoads;
+    // The (road ID, node 1 ID, node 2 ID) of the segments which refer to a road or node that doesn't exist
+    private final List<int[]> danglingSegments;
+    // Which of each dangling segment's references are missing, like "road,node2"
+    private final String[] danglingMissing;
+    // How long it took to work everything out, in milliseconds
+    private final long millis;
+
+    /**
+     * Works out the statistics of a map, on the common ForkJoinPool.
+     *
+     * @param data - The map
+     */
+    public NetworkStats(MapData data) {
+        this(ForkJoinPool.commonPool(), data);
+    }
+
+    /**
+     * Works out the statistics of a map, on the given pool.
+     *
+     * @param pool - The pool to run on
+     * @param data - The map
+     */
+    public NetworkStats(ForkJoinPool pool, MapData data) {
+        long start = System.nanoTime();
+        RoadGraph graph = data.getGraph();
+        nodeCount = graph.getNodeCount();
+        segmentCount = graph.getSegmentCount();
+        roadCount = graph.getRoadCount();
+
+        // Join up the segments, and add up their lengths, in parallel
+        int classes = 1, speeds = 1;
+        for(int r = 0; r < roadCount; r++) {
+            classes = Math.max(classes, graph.getRoadClass().get(r) + 1);
+            speeds = Math.max(speeds, graph.getRoadSpeed().get(r) + 1);
+        }
+        ConcurrentUnionFind components = new ConcurrentUnionFind(nodeCount);
+        double[] lengths = pool.invoke(new SegmentTask(graph, components, classes, speeds, 0, segmentCount));
+        classLength = new double[classes];
+        speedLength = new double[speeds];
+        System.arraycopy(lengths, 0, classLength, 0, classes);
+        System.arraycopy(lengths, classes, speedLength, 0, speeds);
+
+        // Count the pieces and their sizes
+        int[] size = new int[nodeCount];
+        for(int i = 0; i < nodeCount; i++) {
+            size[components.find(i)]++;
+        }
+        componentSizes = new TreeMap<>();
+        int pieces = 0;
+        for(int i = 0; i < nodeCount; i++) {
+            if(size[i] > 0) {
+                pieces++;
+                componentSizes.merge(size[i], 1, Integer::sum);
+            }
+        }
+        componentCount = pieces;
+
+        // Degrees, and the nodes with none
+        int maxDegree = 0;
+        for(int i = 0; i < nodeCount; i++) {
+            maxDegree = Math.max(maxDegree, graph.degree(i));
+        }
+        degreeCounts = new int[maxDegree + 1];
+        List<Integer> lonelyNodes = new ArrayList<>();
+        for(int i = 0; i < nodeCount; i++) {
+            degreeCounts[graph.degree(i)]++;
+            if(graph.degree(i) == 0) {lonelyNodes.add(graph.getNodeIDs().get(i));}
+        }
+        orphanNodes = lonelyNodes.stream().mapToInt(Integer::intValue).sorted().toArray();
+
+        // Roads with no segments
+        boolean[] used = new boolean[roadCount];
+        for(int s = 0; s < segmentCount; s++) {
+            used[graph.getSegRoad().get(s)] = true;
+        }
+        List<Integer> unusedRoads = new ArrayList<>();
+        for(int r = 0; r < roadCount; r++) {
+            if(!used[r]) {unusedRoads.add(graph.getRoadIDs().get(r));}
+        }
+        orphanRoads = unusedRoads.stream().mapToInt(Integer::intValue).sorted().toArray();
+
+        // Segments which weren't loaded because their road or a node is missing
+        danglingSegments = data.getDanglingSegments();
+        danglingMissing = new String[danglingSegments.size()];
+        for(int i = 0; i < danglingMissing.length; i++) {
+            int[] d = danglingSegments.get(i);
+            List<String> missing = new ArrayList<>();
+            if(graph.roadIndex(d[0]) < 0) {missing.add("road");}
+            if(graph.nodeIndex(d[1]) < 0) {missing.add("node1");}
+            if(graph.nodeIndex(d[2]) < 0) {missing.add("node2");}
+            danglingMissing[i] = String.join(",", missing);
+        }
+        millis = (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Joins up the ends of the segments between start and end, and adds up their lengths by road class and
+     * speed limit, splitting in half until there are few enough segments.
+     */
+    @SuppressWarnings("serial")
+    private static class SegmentTask extends RecursiveTask<double[]> {
+
+        private final RoadGraph graph;
+        private final ConcurrentUnionFind components;
+        private final int classes;
+        private final int speeds;
+        private final int start;
+        private final int end;
+
+        SegmentTask(RoadGraph graph, ConcurrentUnionFind components, int classes, int speeds, int start, int end) {
+            this.graph = graph;
+            this.components = components;
+            this.classes = classes;
+            this.speeds = speeds;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return The lengths of each road class, followed by the lengths of each speed limit category
+         */
+        @Override
+        protected double[] compute() {
+            if(end - start > SEGMENTS_PER_TASK) {
+                int mid = (start + end) >>> 1;
+                SegmentTask right = new SegmentTask(graph, components, classes, speeds, mid, end);
+                right.fork();
+                double[] lengths = new SegmentTask(graph, components, classes, speeds, start, mid).compute();
+                double[] other = right.join();
+                for(int i = 0; i < lengths.length; i++) {
+                    lengths[i] += other[i];
+                }
+                return lengths;
+            }
+
+            double[] lengths = new double[classes + speeds];
+            IntBuffer segNode1 = graph.getSegNode1(), segNode2 = graph.getSegNode2(), segRoad = graph.getSegRoad();
+            DoubleBuffer segLength = graph.getSegLength();
+            for(int s = start; s < end; s++) {
+                components.union(segNode1.get(s), segNode2.get(s));
+                int road = segRoad.get(s);
+                lengths[Math.max(graph.getRoadClass().get(road), 0)] += segLength.get(s);
+                lengths[classes + Math.max(graph.getRoadSpeed().get(road), 0)] += segLength.get(s);
+            }
+            return lengths;
+        }
+    }
+
+    /**
+     * @return A readable summary, for the text output area
+     */
+    public String summary() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("Network: %d intersections, %d segments, %d roads (worked out in %d ms)%n",
+                nodeCount, segmentCount, roadCount, millis));
+        s.append(String.format("Pieces: %d, the biggest has %d intersections%n",
+                componentCount, componentSizes.isEmpty() ? 0 : componentSizes.lastKey()));
+
+        s.append("Segments at each intersection:");
+        for(int d = 0; d < degreeCounts.length; d++) {
+            if(degreeCounts[d] > 0) {s.append(String.format(" %d: %d,", d, degreeCounts[d]));}
+        }
+        s.setLength(s.length() - 1);
+
+        s.append(String.format("%nLength by road class:"));
+        for(int c = 0; c < classLength.length; c++) {
+            s.append(String.format(" %d: %.1fkm,", c, classLength[c]));
+        }
+        s.setLength(s.length() - 1);
+
+        s.append(String.format("%nLength by speed limit category:"));
+        for(int c = 0; c < speedLength.length; c++) {
+            s.append(String.format(" %d: %.1fkm,", c, speedLength[c]));
+        }
+        s.setLength(s.length() - 1);
+
+        s.append(String.format("%nIntersections with no segments: %d, roads with no segments: %d, segments with a missing road or intersection: %d",
+                orphanNodes.length, orphanRoads.length, danglingSegments.size()));
+        return s.toString();
+    }
+
+    /**
+     * Writes the statistics to a tab separated file, with a header and then one (section, key, value) per line.
+     *
+     * @param file - The file to write to
+     * @throws IOException - If the file can't be written
+     */
+    public void write(File file) throws IOException {
+        try(PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.print("section\tkey\tvalue\n");
+            out.printf("size\tnodes\t%d\n", nodeCount);
+            out.printf("size\tsegments\t%d\n", segmentCount);
+            out.printf("size\troads\t%d\n", roadCount);
+            out.printf("components\tcount\t%d\n", componentCount);
+            for(Map.Entry<Integer, Integer> e : componentSizes.entrySet()) {
+                out.printf("component_size\t%d\t%d\n", e.getKey(), e.getValue());
+            }
+            for(int d = 0; d < degreeCounts.length; d++) {
+                out.printf("degree\t%d\t%d\n", d, degreeCounts[d]);
+            }
+            for(int c = 0; c < classLength.length; c++) {
+                out.printf("class_length_km\t%d\t%.6f\n", c, classLength[c]);
+            }
+            for(int c = 0; c < speedLength.length; c++) {
+                out.printf("speed_length_km\t%d\t%.6f\n", c, speedLength[c]);
+            }
+            for(int id : orphanNodes) {
+                out.printf("orphan_node\t%d\t0\n", id);
+            }
+            for(int id : orphanRoads) {
+                out.printf("orphan_road\t%d\t0\n", id);
+            }
+            for(int i = 0; i < danglingMissing.length; i++) {
+                int[] d = danglingSegments.get(i);
+                out.printf("dangling_segment\t%d,%d,%d\t%s\n", d[0], d[1], d[2], danglingMissing[i]);
+            }
+        }
+    }
+
+    /**
+     * Works out the statistics of a map directory from the command line, printing the summary and writing the
+     * statistics file next to the .tab files.
+     *
+     * @param args - The map directory
+     * @throws IOException - If the files can't be read, or the statistics file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 1) {
+            System.err.println("Usage: java NetworkStats <map directory>");
+            System.exit(1);
+        }
+        File dir = new File(args[0]);
+        File nodes = new File(dir, "nodeID-lat-lon.tab");
+        File roads = new File(dir, "roadID-roadInfo.tab");
+        File segments = new File(dir, "roadSeg-roadID-length-nodeID-nodeID-coords.tab");
+        MapData data = TabLoader.load(nodes, roads, segments, new LoadProgress(nodes, roads, segments));
+        NetworkStats stats = new NetworkStats(data);
+        System.out.println(stats.summary());
+        stats.write(new File(dir, FILENAME));
+    }
+
+    /**
+     * @return How many separate pieces the network is in
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return How many pieces there are of each size (in nodes)
+     */
+    public TreeMap<Integer, Integer> getComponentSizes() {
+        return componentSizes;
+    }
+
+    /**
+     * @return How many nodes have each number of segments
+     */
+    public int[] getDegreeCounts() {
+        return degreeCounts;
+    }
+
+    /**
+     * @return The total length (km) of each road class
+     */
+    public double[] getClassLength() {
+        return classLength;
+    }
+
+    /**
+     * @return The total length (km) of each speed limit category
+     */
+    public double[] getSpeedLength() {
+        return speedLength;
+    }
+
+    /**
+     * @return The IDs of the nodes with no segments
+     */
+    public int[] getOrphanNodes() {
+        return orphanNodes;
+    }
+
+    /**
+     * @return The IDs of the roads with no segments
+     */
+    public int[] getOrphanRoads() {
+        return orphanRoads;
+    }
+
+    /**
+     * @return The (road ID, node 1 ID, node 2 ID) of the segments which refer to a road or node that doesn't exist
+     */
+    public List<int[]> getDanglingSegments() {
+        return danglingSegments;
+    }
+}
@@ -1,55 +1,47 @@
 import java.awt.*;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Nodes are intersections, or ends of roads, or points where two roads join.
+ *
+ * A Node is a view of one node of a map's RoadGraph, which is where the node's data is kept. They are made
+ * when they are needed (by MapData.getNode), so they only hold the map and the index of the node.
  */
 public class Node {
 
-    // The ID of the node
-    private int nodeID;
-    // The location of the node
-    private Location loc;
+    // The size of the dot drawn for a node, in pixels
+    public static final int SIZE = 6;
 
-    // Is the node highlighted
-    private boolean highlight = false;
-
-    // The list of segments connected to this node
-    private ArrayList<Segment> segmentList = new ArrayList<>();
+    // The map the node is in
+    private final MapData map;
+    // The index of the node in the map's RoadGraph
+    private final int index;
 
     /**
      * Constructor
-     * Create an instance of the Node class
+     * Create a view of a node of a map.
      *
-     * @param nodeID - The ID of the node
-     * @param lat - The latitude of the node
-     * @param lon - The longitude of the node
+     * @param map - The map the node is in
+     * @param index - The index of the node in the map's RoadGraph
      */
-    public Node(int nodeID, double lat, double lon) {
-        this.nodeID = nodeID;
-        this.loc = Location.newFromLatLon(lat, lon);
+    public Node(MapData map, int index) {
+        this.map = map;
+        this.index = index;
     }
 
     /**
-     * Draws the segment. This will be called during the redraw() method in Main.java
+     * Draws the node. This will be called during the redraw() method in Main.java
      *
      * @param g - The graphics object
      * @param origin - The origin point of the map
      * @param scale - The current scale of the map
+     * @param color - The colour to draw it in
      */
-    public void draw(Graphics g, Location origin, double scale) {
-        // Draw the Segments
-        //segmentList.forEach(segment -> segment.draw(g, origin, scale));
-
-        // Draw the node
-        if(highlight) { // draw the node as yellow and print out the road names of its segments
-            g.setColor(Color.RED);
-        } else { // draw the node as usual
-            g.setColor(Color.BLUE);
-        }
-        Point p = loc.asPoint(origin, scale);
-        int size = 6;
-        g.fillOval(p.x - size / 2, p.y - size / 2, size, size);
+    public void draw(Graphics g, Location origin, double scale, Color color) {
+        g.setColor(color);
+        int x = (int) ((map.getGraph().getNodeX().get(index) - origin.x) * scale);
+        int y = (int) ((origin.y - map.getGraph().getNodeY().get(index)) * scale);
+        g.fillOval(x - SIZE / 2, y - SIZE / 2, SIZE, SIZE);
     }
 
     /**
@@ -59,40 +51,36 @@ public class Node {
      * @return returns the distance from the other node
      */
     public double getDist(Point other, Location origin, double scale) {
-        Point p = loc.asPoint(origin, scale);
+        Point p = getLoc().asPoint(origin, scale);
         return Math.abs(p.x - other.x) + Math.abs(p.y - other.y);
     }
 
     /**
-     * Toggle whether or not the node is highlighted
+     * @return The index of the node in the map's RoadGraph
      */
-    public void highlight() {
-        highlight = !highlight;
+    public int getIndex() {
+        return index;
     }
 
-
-    //  ------------------------------------------------------------------------------------------------
-    //  THE GETTERS AND SETTERS WERE AUTO GENERATED BY INTELLIJ, I HAVE ONLY ADDED THE METHOD COMMENTS.
-    //  ------------------------------------------------------------------------------------------------
-
     /**
      * @return The ID of the node
      */
     public int getNodeID() {
-        return nodeID;
+        return map.getGraph().getNodeIDs().get(index);
     }
 
     /**
      * @return The location of the node
      */
     public Location getLoc() {
-        return loc;
+        return new Location(map.getGraph().getNodeX().get(index), map.getGraph().getNodeY().get(index));
     }
 
     /**
-     * @return The ArrayList containing the segments connected to this node
+     * @return The segments connected to this node
      */
-    public ArrayList<Segment> getSegmentList() {
-        return segmentList;
+    public List<Segment> getSegmentList() {
+        RoadGraph graph = map.getGraph();
+        return map.segmentView(graph.getAdjSegments(), graph.getAdjStart().get(index), graph.getAdjStart().get(index + 1));
     }
 }
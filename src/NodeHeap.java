@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+/**
+ * A binary min heap of node indexes, keyed by a double (the cost so far), made of primitive arrays.
+ *
+ * Each node can only be in the heap once, and the heap knows where each node is, so a node's key can
+ * be lowered in place (rather than adding it again, which is what a PriorityQueue would need).
+ * Nothing is allocated by push() or pop(), and clear() only touches the nodes still in the heap,
+ * so one heap can be reused for search after search.
+ */
+public class NodeHeap {
+
+    // The nodes in the heap, in heap order, and their keys in the same order (so comparisons read memory close together)
+    private final int[] heap;
+    private final double[] keys;
+    // Where each node is in the heap, or -1 if it isn't in it
+    private final int[] position;
+    // How many nodes are in the heap
+    private int size = 0;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param nodeCount - The number of nodes (node indexes go from 0 up to nodeCount - 1)
+     */
+    public NodeHeap(int nodeCount) {
+        heap = new int[nodeCount];
+        keys = new double[nodeCount];
+        position = new int[nodeCount];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Adds a node, or lowers its key if it is already in the heap with a bigger one.
+     *
+     * @param node - The index of the node
+     * @param key - The key of the node
+     */
+    public void push(int node, double key) {
+        int i = position[node];
+        if(i < 0) {
+            i = size++;
+        } else if(key >= keys[i]) {
+            return;
+        }
+        siftUp(i, node, key);
+    }
+
+    /**
+     * Removes the node with the smallest key.
+     *
+     * @return The index of the node
+     */
+    public int pop() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if(size > 0) {
+            siftDown(0, heap[size], keys[size]);
+        }
+        return top;
+    }
+
+    /**
+     * @return The smallest key in the heap (the heap must not be empty)
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * @param node - The index of a node
+     * @return Whether the node is in the heap
+     */
+    public boolean contains(int node) {
+        return position[node] >= 0;
+    }
+
+    /**
+     * Empties the heap.
+     */
+    public void clear() {
+        for(int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Moves a node up from position i until its parent has a smaller key.
+     */
+    private void siftUp(int i, int node, double key) {
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(keys[parent] <= key) {break;}
+            int p = heap[parent];
+            heap[i] = p;
+            keys[i] = keys[parent];
+            position[p] = i;
+            i = parent;
+        }
+        heap[i] = node;
+        keys[i] = key;
+        position[node] = i;
+    }
+
+    /**
+     * Moves a node down from position i until both of its children have bigger keys.
+     */
+    private void siftDown(int i, int node, double key) {
+        int half = size >>> 1;
+        while(i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if(right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if(key <= keys[child]) {break;}
+            int c = heap[child];
+            heap[i] = c;
+            keys[i] = keys[child];
+            position[c] = i;
+            i = child;
+        }
+        heap[i] = node;
+        keys[i] = key;
+        position[node] = i;
+    }
+
+    /**
+     * @return Whether the heap is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The number of nodes in the heap
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,74 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Reusable arrays of pixel positions, for drawing lines without making new arrays every time.
+ *
+ * A PointBuffer isn't thread safe, so each drawing thread needs its own.
+ */
+public class PointBuffer {
+
+    // The x and y pixel positions
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+
+    /**
+     * Converts xs[from..to-1], ys[from..to-1] to pixel positions, which are put at the start of getX() and getY().
+     *
+     * @param xs - The x coordinates of the locations
+     * @param ys - The y coordinates of the locations
+     * @param from - The first location
+     * @param to - One past the last location
+     * @param origin - The Location at the top left corner of the screen
+     * @param scale - The current scale of the map
+     */
+    public void project(DoubleBuffer xs, DoubleBuffer ys, int from, int to, Location origin, double scale) {
+        ensureCapacity(to - from);
+        Location.project(xs, ys, from, to, origin, scale, x, y);
+    }
+
+    /**
+     * Like project, but for the locations listed in points[from..to-1] (which are indexes into xs and ys).
+     * If points is null, the locations are xs[from..to-1], ys[from..to-1] as usual.
+     *
+     * @param points - The indexes of the locations, or null
+     */
+    public void project(DoubleBuffer xs, DoubleBuffer ys, IntBuffer points, int from, int to, Location origin, double scale) {
+        if(points == null) {
+            project(xs, ys, from, to, origin, scale);
+            return;
+        }
+        ensureCapacity(to - from);
+        double ox = origin.x, oy = origin.y;
+        for(int i = from, j = 0; i < to; i++, j++) {
+            int p = points.get(i);
+            x[j] = (int) ((xs.get(p) - ox) * scale);
+            y[j] = (int) ((oy - ys.get(p)) * scale);
+        }
+    }
+
+    /**
+     * Makes sure the buffer can hold at least n points.
+     */
+    public void ensureCapacity(int n) {
+        if(x.length < n) {
+            int size = Math.max(n, x.length * 2);
+            x = new int[size];
+            y = new int[size];
+        }
+    }
+
+    /**
+     * @return The x pixel positions
+     */
+    public int[] getX() {
+        return x;
+    }
+
+    /**
+     * @return The y pixel positions
+     */
+    public int[] getY() {
+        return y;
+    }
+}
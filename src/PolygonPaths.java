@@ -0,0 +1,122 @@
+import java.awt.Polygon;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The polygons as shapes, already projected to pixels, so that filling a polygon doesn't have to project
+ * every point of it again. Each shape is made the first time the polygon is drawn at a zoom level, from the
+ * level of detail for that zoom (see PolygonShapes), and kept until the zoom level changes. The zoom levels are
+ * the same as the TileCache's, so small zoom steps in between keep using the same shapes.
+ *
+ * The shapes are in "world pixels" at their zoom level, like the TileCache: a Location is at
+ * (x * shapeScale, -y * shapeScale), rounded. So one shape can be drawn into any tile (or anywhere on the
+ * screen) at that scale by translating the Graphics, and panning around never makes new shapes.
+ * Drawing at a scale between the levels needs a scaling transform as well. Points which round to the same pixel as the one
+ * before are left out, which gets rid of most of the points of a detailed coastline when zoomed out.
+ *
+ * Polygons with one ring (nearly all of them) become a java.awt.Polygon, which is filled straight from its
+ * int arrays, and is much quicker to fill than a Path2D with lots of points. Polygons with holes become a
+ * Path2D with the even-odd rule. A shape drawn through a scaling transform would work at every zoom, but
+ * Java2D fills those quite a bit slower than ones which only need moving.
+ *
+ * Tiles are drawn on several threads at once, so the shapes are kept in an AtomicReferenceArray. If two threads
+ * make the same shape at the same time one of them is just wasted.
+ */
+public class PolygonPaths {
+
+    // The polygons being drawn
+    private final PolygonShapes polygons;
+
+    // The shapes for the zoom level which was drawn last
+    private volatile Bucket bucket;
+
+    /**
+     * Constructor
+     *
+     * @param polygons - The polygons being drawn
+     */
+    public PolygonPaths(PolygonShapes polygons) {
+        this.polygons = polygons;
+        this.bucket = new Bucket(0, polygons.getCount());
+    }
+
+    /**
+     * @param scale - The scale the map is being drawn at
+     * @return The scale of the zoom level the shapes are made at for that scale
+     */
+    public static double shapeScale(double scale) {
+        return TileCache.tileScale(scale);
+    }
+
+    /**
+     * @param polygon - The index of a polygon
+     * @param scale - The scale it is being drawn at
+     * @return The polygon in world pixels at shapeScale(scale): a Polygon if it has one ring, otherwise a Path2D
+     */
+    public Shape get(int polygon, double scale) {
+        double shapeScale = shapeScale(scale);
+        Bucket b = bucket;
+        if(b.scale != shapeScale) { // Zoomed to another level, so the old shapes are no use
+            b = new Bucket(shapeScale, polygons.getCount());
+            bucket = b;
+        }
+
+        Shape shape = b.shapes.get(polygon);
+        if(shape == null) {
+            shape = makeShape(polygon, shapeScale);
+            b.shapes.set(polygon, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Makes the shape for a polygon at a scale.
+     */
+    private Shape makeShape(int polygon, double scale) {
+        int detail = PolygonShapes.detailFor(scale);
+        int[] ringStart = polygons.getRingStart();
+        int[] pointStart = polygons.getPointStart(detail);
+        double[] xs = polygons.getX(detail);
+        double[] ys = polygons.getY(detail);
+
+        Polygon[] rings = new Polygon[ringStart[polygon + 1] - ringStart[polygon]];
+        for(int r = 0; r < rings.length; r++) {
+            int first = pointStart[ringStart[polygon] + r], last = pointStart[ringStart[polygon] + r + 1];
+            int[] u = new int[last - first], v = new int[last - first];
+            int n = 0;
+            for(int c = first; c < last; c++) {
+                int pu = (int) Math.round(xs[c] * scale), pv = (int) Math.round(-ys[c] * scale);
+                if(n == 0 || pu != u[n - 1] || pv != v[n - 1]) {
+                    u[n] = pu;
+                    v[n] = pv;
+                    n++;
+                }
+            }
+            rings[r] = new Polygon(u, v, n);
+        }
+        if(rings.length == 1) {return rings[0];}
+
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        for(Polygon ring : rings) {
+            path.append(ring, false);
+        }
+        return path;
+    }
+
+    /**
+     * The shapes made at one zoom level.
+     */
+    private static class Bucket {
+
+        // The scale
+        private final double scale;
+        // The shape of each polygon, or null if it hasn't been drawn yet
+        private final AtomicReferenceArray<Shape> shapes;
+
+        Bucket(double scale, int count) {
+            this.scale = scale;
+            this.shapes = new AtomicReferenceArray<>(count);
+        }
+    }
+}
@@ -0,0 +1,621 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The filled areas of the map (lakes, parks, buildings and so on), from polygon-shapes.mp.
+ *
+ * The file is made of blocks like this, where each Data line is one ring of (lat,lon) points:
+ *
+ *     [POLYGON]
+ *     Type=0x13
+ *     EndLevel=1
+ *     Data0=(-36.78881,174.62689),(-36.78965,174.62684),(-36.78965,174.62626)
+ *     [END]
+ *
+ * Type says what the area is, and EndLevel says how far out it can be seen (0 is only when zoomed right in,
+ * 3 is always). Types which aren't in the style table below are skipped.
+ *
+ * Everything is kept in primitive arrays: the rings of polygon p are ringStart[p] up to (but not including)
+ * ringStart[p+1], and the points of ring r are x/y[pointStart[r]] up to x/y[pointStart[r+1]]. Polygons are
+ * sorted into layers (sea, land use, parks, water, buildings) which are drawn in that order, and each layer
+ * has its own R-tree of the polygons' bounding boxes, so drawing a layer only looks at what is on screen.
+ *
+ * The rings are also kept simplified at the same levels of detail as the segments (see SegmentLod), and
+ * the PolygonPaths made from them are what actually get drawn.
+ */
+public class PolygonShapes {
+
+    // The name of the polygons file, which lives in the same directory as the .tab files
+    public static final String FILENAME = "polygon-shapes.mp";
+
+    // The scale (pixels per km) each EndLevel needs to be zoomed in to: level 0 needs 40, 1 needs 10, 2 needs 2.5
+    private static final double[] LEVEL_SCALES = {40, 10, 2.5};
+
+    // Polygons smaller than this many pixels (across and down) aren't worth filling
+    private static final double MIN_PIXELS = 1;
+
+    // The layer each type is drawn in (-1 if it isn't drawn), and its colour
+    private static final int LAYERS = 5;
+    private static final int[] TYPE_LAYER = new int[256];
+    private static final Color[] TYPE_COLOUR = new Color[256];
+    static {
+        Arrays.fill(TYPE_LAYER, -1);
+        style(0x28, 0x29, 0, new Color(170, 205, 235)); // Sea
+        style(0x32, 0x32, 0, new Color(170, 205, 235));
+        style(0x01, 0x03, 1, new Color(236, 232, 224)); // Towns
+        style(0x04, 0x04, 1, new Color(230, 220, 220)); // Military
+        style(0x0c, 0x0c, 1, new Color(230, 225, 235)); // Industrial
+        style(0x0d, 0x0d, 1, new Color(215, 235, 205)); // Reservations
+        style(0x14, 0x17, 2, new Color(200, 230, 190)); // Parks
+        style(0x18, 0x18, 2, new Color(185, 225, 175)); // Golf courses
+        style(0x19, 0x19, 2, new Color(190, 225, 190)); // Sports grounds
+        style(0x1a, 0x1a, 2, new Color(205, 220, 200)); // Cemeteries
+        style(0x1e, 0x20, 2, new Color(195, 225, 185)); // National and state parks
+        style(0x4e, 0x4f, 2, new Color(210, 235, 190)); // Orchards and scrub
+        style(0x50, 0x50, 2, new Color(175, 215, 165)); // Forest
+        style(0x51, 0x51, 2, new Color(195, 225, 220)); // Wetland
+        style(0x3b, 0x49, 3, new Color(170, 205, 235)); // Lakes and rivers
+        style(0x4c, 0x4c, 3, new Color(185, 215, 240)); // Intermittent water
+        style(0x05, 0x06, 4, new Color(220, 220, 220)); // Parking
+        style(0x07, 0x07, 4, new Color(225, 220, 235)); // Airports
+        style(0x08, 0x08, 4, new Color(240, 220, 220)); // Shopping centres
+        style(0x09, 0x09, 4, new Color(200, 220, 240)); // Marinas
+        style(0x0a, 0x0a, 4, new Color(240, 235, 210)); // Universities and schools
+        style(0x0b, 0x0b, 4, new Color(245, 215, 215)); // Hospitals
+        style(0x0e, 0x0e, 4, new Color(200, 200, 205)); // Runways
+        style(0x13, 0x13, 4, new Color(215, 205, 195)); // Buildings
+    }
+
+    // The type and EndLevel of each polygon
+    private final int[] type;
+    private final int[] endLevel;
+    // Where each polygon's rings start (one longer than the number of polygons)
+    private final int[] ringStart;
+    // Where each ring's points start (one longer than the number of rings), and the points of all of the rings,
+    // at each level of detail. Level 0 is the full rings, and the others are simplified like the SegmentLod.
+    private final int[][] pointStart = new int[SegmentLod.TOLERANCES.length][];
+    private final double[][] x = new double[SegmentLod.TOLERANCES.length][];
+    private final double[][] y = new double[SegmentLod.TOLERANCES.length][];
+    // The bounding box of each polygon
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    // Where each layer's polygons start (one longer than the number of layers), and an R-tree for each layer
+    private final int[] layerStart = new int[LAYERS + 1];
+    private final RTree[] layerTrees = new RTree[LAYERS];
+
+    /**
+     * Creates the polygons from the arrays the parser fills in, sorting them into layers and building the indexes.
+     *
+     * @param type - The type of each polygon (which must be one with a layer)
+     * @param endLevel - The EndLevel of each polygon
+     * @param ringStart - Where each polygon's rings start
+     * @param pointStart - Where each ring's points start
+     * @param x - The x coordinates of the points
+     * @param y - The y coordinates of the points
+     * @param count - The number of polygons in the arrays
+     */
+    public PolygonShapes(int[] type, int[] endLevel, int[] ringStart, int[] pointStart, double[] x, double[] y, int count) {
+        // Work out the order: by layer, and in file order within each layer
+        for(int p = 0; p < count; p++) {
+            layerStart[TYPE_LAYER[type[p]] + 1]++;
+        }
+        for(int l = 0; l < LAYERS; l++) {
+            layerStart[l + 1] += layerStart[l];
+        }
+        int[] order = new int[count];
+        int[] next = Arrays.copyOf(layerStart, LAYERS);
+        for(int p = 0; p < count; p++) {
+            order[next[TYPE_LAYER[type[p]]]++] = p;
+        }
+
+        // Copy everything over in that order
+        int rings = ringStart[count];
+        int points = pointStart[rings];
+        this.type = new int[count];
+        this.endLevel = new int[count];
+        this.ringStart = new int[count + 1];
+        int[] fullStart = new int[rings + 1];
+        double[] fullX = new double[points], fullY = new double[points];
+        int r = 0, n = 0;
+        for(int i = 0; i < count; i++) {
+            int p = order[i];
+            this.type[i] = type[p];
+            this.endLevel[i] = endLevel[p];
+            for(int from = ringStart[p]; from < ringStart[p + 1]; from++) {
+                int length = pointStart[from + 1] - pointStart[from];
+                System.arraycopy(x, pointStart[from], fullX, n, length);
+                System.arraycopy(y, pointStart[from], fullY, n, length);
+                n += length;
+                fullStart[++r] = n;
+            }
+            this.ringStart[i + 1] = r;
+        }
+
+        // Bounding boxes, and the index of each layer
+        minX = new double[count];
+        minY = new double[count];
+        maxX = new double[count];
+        maxY = new double[count];
+        for(int p = 0; p < count; p++) {
+            minX[p] = minY[p] = Double.POSITIVE_INFINITY;
+            maxX[p] = maxY[p] = Double.NEGATIVE_INFINITY;
+            for(int c = fullStart[this.ringStart[p]]; c < fullStart[this.ringStart[p + 1]]; c++) {
+                minX[p] = Math.min(minX[p], fullX[c]);
+                minY[p] = Math.min(minY[p], fullY[c]);
+                maxX[p] = Math.max(maxX[p], fullX[c]);
+                maxY[p] = Math.max(maxY[p], fullY[c]);
+            }
+        }
+        for(int l = 0; l < LAYERS; l++) {
+            int from = layerStart[l], to = layerStart[l + 1];
+            layerTrees[l] = new RTree(Arrays.copyOfRange(minX, from, to), Arrays.copyOfRange(minY, from, to),
+                    Arrays.copyOfRange(maxX, from, to), Arrays.copyOfRange(maxY, from, to));
+        }
+
+        // The simplified rings. Coastlines and big parks have thousands of points, most of which are far
+        // closer together than a pixel when zoomed out.
+        this.pointStart[0] = fullStart;
+        this.x[0] = fullX;
+        this.y[0] = fullY;
+        boolean[] keep = new boolean[points];
+        int[] stack = new int[64];
+        for(int l = 1; l < SegmentLod.TOLERANCES.length; l++) {
+            int[] prevStart = this.pointStart[l - 1];
+            double[] px = this.x[l - 1], py = this.y[l - 1];
+            double tolerance2 = SegmentLod.TOLERANCES[l] * SegmentLod.TOLERANCES[l];
+
+            int kept = 0;
+            for(int ring = 0; ring < rings; ring++) {
+                stack = simplifyRing(px, py, prevStart[ring], prevStart[ring + 1], tolerance2, keep, stack);
+                for(int c = prevStart[ring]; c < prevStart[ring + 1]; c++) {
+                    if(keep[c]) {kept++;}
+                }
+            }
+
+            int[] levelStart = new int[rings + 1];
+            double[] lx = new double[kept], ly = new double[kept];
+            n = 0;
+            for(int ring = 0; ring < rings; ring++) {
+                for(int c = prevStart[ring]; c < prevStart[ring + 1]; c++) {
+                    if(keep[c]) {
+                        lx[n] = px[c];
+                        ly[n] = py[c];
+                        n++;
+                    }
+                }
+                levelStart[ring + 1] = n;
+            }
+            this.pointStart[l] = levelStart;
+            this.x[l] = lx;
+            this.y[l] = ly;
+        }
+    }
+
+    /**
+     * Simplifies the ring from..to-1 with Douglas-Peucker, setting keep[] for the points which stay.
+     *
+     * A ring starts and finishes at the same place, so it is first cut in two at the point furthest from its
+     * first point, and each half is simplified separately. Those three points are always kept, so a ring never
+     * collapses to a line. The simplified edges are never more than the tolerance away from the real ones (under
+     * a pixel at the scales the level is used at), so anywhere they do cross is too small to see.
+     *
+     * @return The stack (which may have been made bigger)
+     */
+    private static int[] simplifyRing(double[] x, double[] y, int from, int to, double tolerance2, boolean[] keep, int[] stack) {
+        if(to - from <= 4) { // Nothing worth simplifying
+            Arrays.fill(keep, from, to, true);
+            return stack;
+        }
+
+        int furthest = from + 1;
+        double furthestDist = -1;
+        for(int i = from + 1; i < to; i++) {
+            double dx = x[i] - x[from], dy = y[i] - y[from];
+            if(dx * dx + dy * dy > furthestDist) {
+                furthestDist = dx * dx + dy * dy;
+                furthest = i;
+            }
+        }
+
+        stack = SegmentLod.simplify(x, y, from, furthest + 1, tolerance2, keep, stack);
+        stack = SegmentLod.simplify(x, y, furthest, to, tolerance2, keep, stack);
+        return stack;
+    }
+
+    /**
+     * Reads the polygons from a file, a line at a time straight from the bytes (so that the long lists of
+     * coordinates never become Strings).
+     *
+     * @param file - The polygons file
+     * @param progress - Told how much of the file has been read
+     * @return The polygons
+     * @throws IOException - If the file can't be read
+     * @throws NumberFormatException - If a number in the file doesn't make sense
+     */
+    public static PolygonShapes load(File file, LoadProgress progress) throws IOException {
+        int[] type = new int[256], endLevel = new int[256], ringStart = new int[257];
+        int[] pointStart = new int[1024];
+        double[] x = new double[16384], y = new double[16384];
+        int count = 0, rings = 0, points = 0;
+
+        // The polygon being read
+        int polyType = -1, polyLevel = 0;
+        boolean inPolygon = false;
+
+        try(LineReader line = new LineReader(new FileInputStream(file))) {
+            long reported = 0;
+            int parsed = 0;
+            while(line.next()) {
+                if(line.startsWith("[POLYGON")) {
+                    inPolygon = true;
+                    polyType = -1;
+                    polyLevel = 0;
+                    rings = ringStart[count];
+                    points = pointStart[rings];
+                } else if(!inPolygon) {
+                    continue; // Anything outside a block (like a header) doesn't matter
+                } else if(line.startsWith("[END")) {
+                    inPolygon = false;
+                    // Keep the polygon if it has a type that is drawn, and at least one ring
+                    if(polyType >= 0 && polyType < TYPE_LAYER.length && TYPE_LAYER[polyType] >= 0 && rings > ringStart[count]) {
+                        if(count + 1 == type.length) {
+                            type = Arrays.copyOf(type, type.length * 2);
+                            endLevel = Arrays.copyOf(endLevel, endLevel.length * 2);
+                            ringStart = Arrays.copyOf(ringStart, ringStart.length * 2);
+                        }
+                        type[count] = polyType;
+                        endLevel[count] = polyLevel;
+                        ringStart[++count] = rings;
+                        parsed++;
+                    }
+                } else if(line.startsWith("Type=")) {
+                    polyType = line.nextInt();
+                } else if(line.startsWith("EndLevel=")) {
+                    polyLevel = Math.max(polyLevel, line.nextInt());
+                } else if(line.startsWith("Data")) {
+                    // DataN is the ring for zoom level N, so the polygon can't be seen any further out than N
+                    polyLevel = Math.max(polyLevel, line.nextInt());
+                    int first = points;
+                    while(line.skipPast('(')) {
+                        if(points == x.length) {
+                            x = Arrays.copyOf(x, points * 2);
+                            y = Arrays.copyOf(y, points * 2);
+                        }
+                        double lat = line.nextDouble();
+                        line.skipPast(',');
+                        double lon = line.nextDouble();
+                        Location l = Location.newFromLatLon(lat, lon);
+                        x[points] = l.x;
+                        y[points] = l.y;
+                        points++;
+                    }
+                    if(points - first < 3) { // Not a ring
+                        points = first;
+                        continue;
+                    }
+                    if(rings + 1 == pointStart.length) {
+                        pointStart = Arrays.copyOf(pointStart, pointStart.length * 2);
+                    }
+                    pointStart[++rings] = points;
+                }
+
+                if(line.getBytesRead() - reported >= LineReader.BUFFER_SIZE) {
+                    progress.update(file, line.getBytesRead() - reported, parsed);
+                    progress.checkCancelled();
+                    reported = line.getBytesRead();
+                    parsed = 0;
+                }
+            }
+            progress.update(file, line.getBytesRead() - reported, parsed);
+        }
+        return new PolygonShapes(type, endLevel, ringStart, pointStart, x, y, count);
+    }
+
+    /**
+     * Picks the level of detail to draw with.
+     *
+     * @param scale - The current scale of the map (pixels per km)
+     * @return The coarsest level which is still accurate to a pixel
+     */
+    public static int detailFor(double scale) {
+        return SegmentLod.levelFor(scale);
+    }
+
+    /**
+     * Picks which polygons to draw.
+     *
+     * @param scale - The current scale of the map (pixels per km)
+     * @return The lowest EndLevel which can be seen at this scale
+     */
+    public static int levelFor(double scale) {
+        int level = 0;
+        while(level < LEVEL_SCALES.length && scale < LEVEL_SCALES[level]) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Finds the polygons of a layer which are (partly) inside a rectangle and big enough to see.
+     *
+     * @param layer - The layer
+     * @param left - The left of the rectangle
+     * @param bottom - The bottom of the rectangle
+     * @param right - The right of the rectangle
+     * @param top - The top of the rectangle
+     * @param scale - The current scale of the map
+     * @param action - Given the index of each polygon
+     */
+    public void query(int layer, double left, double bottom, double right, double top, double scale, IntConsumer action) {
+        int offset = layerStart[layer];
+        int level = levelFor(scale);
+        double minSize = MIN_PIXELS / scale;
+        layerTrees[layer].query(left, bottom, right, top, i -> {
+            int p = i + offset;
+            if(endLevel[p] >= level && (maxX[p] - minX[p] >= minSize || maxY[p] - minY[p] >= minSize)) {
+                action.accept(p);
+            }
+        });
+    }
+
+    /**
+     * Sets the layer and colour of a range of types.
+     */
+    private static void style(int from, int to, int layer, Color colour) {
+        for(int t = from; t <= to; t++) {
+            TYPE_LAYER[t] = layer;
+            TYPE_COLOUR[t] = colour;
+        }
+    }
+
+    /**
+     * Reads a file one line at a time into a reused byte array, and parses values out of the current line.
+     */
+    private static class LineReader implements AutoCloseable {
+
+        // How much of the file is read at once
+        static final int BUFFER_SIZE = 1 << 16;
+
+        private final InputStream in;
+        // The bytes which have been read from the file but not looked at yet are buffer[next] to buffer[end - 1]
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int next = 0;
+        private int end = 0;
+        // The current line (without its line break), and how far through it we are
+        private byte[] line = new byte[256];
+        private int length = 0;
+        private int pos = 0;
+        // How many bytes have been read from the file
+        private long bytesRead = 0;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Moves to the next line.
+         *
+         * @return false if there are no more lines
+         */
+        boolean next() throws IOException {
+            length = 0;
+            pos = 0;
+            while(true) {
+                if(next == end) {
+                    end = in.read(buffer);
+                    next = 0;
+                    if(end <= 0) {
+                        end = 0;
+                        return length > 0;
+                    }
+                    bytesRead += end;
+                }
+
+                // Copy up to the end of the line, or the end of the buffer
+                int stop = next;
+                while(stop < end && buffer[stop] != '\n') {stop++;}
+                int n = stop - next;
+                if(length + n > line.length) {line = Arrays.copyOf(line, Math.max(length + n, line.length * 2));}
+                System.arraycopy(buffer, next, line, length, n);
+                length += n;
+                next = stop;
+
+                if(next < end) { // Found the line break
+                    next++;
+                    if(length > 0 && line[length - 1] == '\r') {length--;}
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return Whether the line starts with the prefix. If it does, the position moves to just after it.
+         */
+        boolean startsWith(String prefix) {
+            if(prefix.length() > length) {return false;}
+            for(int i = 0; i < prefix.length(); i++) {
+                if(line[i] != prefix.charAt(i)) {return false;}
+            }
+            pos = prefix.length();
+            return true;
+        }
+
+        /**
+         * Moves to just after the next c on the line.
+         *
+         * @return false if there isn't one
+         */
+        boolean skipPast(char c) {
+            while(pos < length) {
+                if(line[pos++] == c) {return true;}
+            }
+            return false;
+        }
+
+        /**
+         * Parses a decimal or (with 0x in front) hexadecimal int, and skips past the '=' after it if there is one.
+         *
+         * @return The next value as an int
+         */
+        int nextInt() {
+            int radix = 10;
+            if(pos + 1 < length && line[pos] == '0' && (line[pos + 1] == 'x' || line[pos + 1] == 'X')) {
+                radix = 16;
+                pos += 2;
+            }
+            int start = pos;
+            int value = 0;
+            while(pos < length) {
+                int digit = Character.digit(line[pos], radix);
+                if(digit < 0) {break;}
+                value = value * radix + digit;
+                pos++;
+            }
+            if(pos == start) {throw new NumberFormatException("Expected a number: " + text());}
+            if(pos < length && line[pos] == '=') {pos++;}
+            return value;
+        }
+
+        /**
+         * Parses a plain decimal number (like -36.78881), the same way as the TabLoader: the digits are
+         * collected into a long and divided by a power of ten, which is correctly rounded while the digits
+         * fit in 53 bits. Longer numbers are handed to Double.parseDouble.
+         *
+         * @return The next value as a double
+         */
+        double nextDouble() {
+            int start = pos;
+            boolean negative = pos < length && line[pos] == '-';
+            if(negative) {pos++;}
+
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = 0;
+            boolean point = false;
+            while(pos < length) {
+                byte b = line[pos];
+                if(b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if(mantissa != 0) {digits++;}
+                    if(point) {decimals++;}
+                } else if(b == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+                pos++;
+            }
+
+            if(pos == start || decimals >= POWERS_OF_TEN.length) {
+                throw new NumberFormatException("Expected a coordinate: " + text());
+            }
+            if(digits > 18 || mantissa > MAX_EXACT) {
+                return Double.parseDouble(new String(line, start, pos - start, StandardCharsets.US_ASCII));
+            }
+            double value = mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -value : value;
+        }
+
+        /**
+         * @return The start of the line, for error messages
+         */
+        private String text() {
+            return new String(line, 0, Math.min(length, 60), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return How many bytes have been read from the file
+         */
+        long getBytesRead() {
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        // The largest mantissa which a double holds exactly
+        private static final long MAX_EXACT = 1L << 53;
+        // 10^0 to 10^22, all of which are exact doubles
+        private static final double[] POWERS_OF_TEN = new double[23];
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for(int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+    }
+
+    /**
+     * @return The number of polygons
+     */
+    public int getCount() {
+        return type.length;
+    }
+
+    /**
+     * @return The number of layers, which are drawn in order from 0
+     */
+    public int getLayerCount() {
+        return LAYERS;
+    }
+
+    /**
+     * @return The type of each polygon
+     */
+    public int[] getType() {
+        return type;
+    }
+
+    /**
+     * @return The EndLevel of each polygon
+     */
+    public int[] getEndLevel() {
+        return endLevel;
+    }
+
+    /**
+     * @return Where each polygon's rings start (one longer than the number of polygons)
+     */
+    public int[] getRingStart() {
+        return ringStart;
+    }
+
+    /**
+     * @return Where each ring's points start at a level of detail (one longer than the number of rings)
+     */
+    public int[] getPointStart(int detail) {
+        return pointStart[detail];
+    }
+
+    /**
+     * @return The x coordinates of the points at a level of detail
+     */
+    public double[] getX(int detail) {
+        return x[detail];
+    }
+
+    /**
+     * @return The y coordinates of the points at a level of detail
+     */
+    public double[] getY(int detail) {
+        return y[detail];
+    }
+
+    /**
+     * @param polygon - The index of a polygon
+     * @return The colour to fill it with
+     */
+    public Color getColour(int polygon) {
+        return TYPE_COLOUR[type[polygon]];
+    }
+}
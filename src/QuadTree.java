@@ -0,0 +1,439 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A quadtree over a set of points, used to find the points near a location without looking at all of them.
+ *
+ * Points are referred to by their index in the x and y arrays it was built from. The tree is built in one go:
+ * the point indexes are shuffled so that every quadtree cell covers a contiguous range of them, and each
+ * cell is split into (up to) four quarters until it holds few enough points. The cells themselves are kept
+ * in primitive arrays too, with the tight bounding box of their points, which queries use to skip whole cells.
+ *
+ * Like the RoadGraph, the arrays are NIO buffers, so a GraphSnapshot can store them and use them straight from the file.
+ */
+public class QuadTree {
+
+    // Cells with this many points or fewer aren't split
+    private static final int LEAF_SIZE = 16;
+    // Stops points which are all in the same place from being split forever
+    private static final int MAX_DEPTH = 32;
+
+    // The points
+    private final DoubleBuffer xs;
+    private final DoubleBuffer ys;
+
+    // The point indexes, ordered so each cell's points are together
+    private final IntBuffer order;
+
+    // The cells, CELL_INTS ints and CELL_DOUBLES doubles each. Each has its range in order, its children
+    // (childCount children, stored next to each other starting at firstChild), and the bounding box of its points.
+    private static final int CELL_INTS = 4, START = 0, END = 1, FIRST_CHILD = 2, CHILD_COUNT = 3;
+    private static final int CELL_DOUBLES = 4, MIN_X = 0, MIN_Y = 1, MAX_X = 2, MAX_Y = 3;
+    private final IntBuffer cells;
+    private final DoubleBuffer boxes;
+
+    /**
+     * Builds the quadtree.
+     *
+     * @param xs - The x coordinate of each point
+     * @param ys - The y coordinate of each point
+     */
+    public QuadTree(DoubleBuffer xs, DoubleBuffer ys) {
+        this.xs = xs;
+        this.ys = ys;
+        Builder b = new Builder(xs, ys);
+        order = IntBuffer.wrap(b.order);
+        cells = IntBuffer.wrap(Arrays.copyOf(b.cells, b.cellCount * CELL_INTS));
+        boxes = DoubleBuffer.wrap(Arrays.copyOf(b.boxes, b.cellCount * CELL_DOUBLES));
+    }
+
+    /**
+     * Makes the quadtree from arrays which were built before (by a GraphSnapshot).
+     *
+     * @param xs - The x coordinate of each point
+     * @param ys - The y coordinate of each point
+     * @param order - What getOrder() returned
+     * @param cells - What getCells() returned
+     * @param boxes - What getBoxes() returned
+     * @throws IllegalArgumentException - If the arrays aren't the right lengths for each other
+     */
+    public QuadTree(DoubleBuffer xs, DoubleBuffer ys, IntBuffer order, IntBuffer cells, DoubleBuffer boxes) {
+        if(order.limit() != xs.limit() || ys.limit() != xs.limit() || cells.limit() % CELL_INTS != 0
+                || boxes.limit() != cells.limit() / CELL_INTS * CELL_DOUBLES || (cells.limit() == 0) != (xs.limit() == 0)) {
+            throw new IllegalArgumentException("The quadtree doesn't fit its " + xs.limit() + " points");
+        }
+        this.xs = xs;
+        this.ys = ys;
+        this.order = order;
+        this.cells = cells;
+        this.boxes = boxes;
+    }
+
+    /**
+     * Finds the point nearest to a location.
+     *
+     * @param x - The x coordinate of the location
+     * @param y - The y coordinate of the location
+     * @return The index of the nearest point, or -1 if there are no points
+     */
+    public int nearest(double x, double y) {
+        if(order.limit() == 0) {return -1;}
+        int[] best = {-1};
+        double[] bestDist = {Double.POSITIVE_INFINITY};
+        nearest(0, x, y, best, bestDist);
+        return best[0];
+    }
+
+    /**
+     * Finds the k points nearest to a location.
+     *
+     * @param x - The x coordinate of the location
+     * @param y - The y coordinate of the location
+     * @param k - How many points to find
+     * @return The indexes of the (up to) k nearest points, nearest first
+     */
+    public int[] kNearest(double x, double y, int k) {
+        k = Math.min(k, order.limit());
+        if(k <= 0) {return new int[0];}
+
+        // A max heap of the k best so far, so the worst one is easy to replace
+        int[] heap = new int[k];
+        double[] heapDist = new double[k];
+        int[] size = {0};
+        kNearest(0, x, y, heap, heapDist, size);
+
+        // Pull them out of the heap, worst first
+        int[] results = new int[size[0]];
+        for(int i = size[0] - 1; i >= 0; i--) {
+            results[i] = heap[0];
+            heap[0] = heap[i];
+            heapDist[0] = heapDist[i];
+            siftDown(heap, heapDist, 0, i);
+        }
+        return results;
+    }
+
+    /**
+     * Finds every point within a radius of a location.
+     *
+     * @param x - The x coordinate of the location
+     * @param y - The y coordinate of the location
+     * @param radius - The radius
+     * @param action - Given the index of each point found
+     */
+    public void withinRadius(double x, double y, double radius, IntConsumer action) {
+        if(order.limit() == 0) {return;}
+        withinRadius(0, x, y, radius * radius, action);
+    }
+
+    /**
+     * Finds every point inside a rectangle.
+     *
+     * @param x1 - The left of the rectangle
+     * @param y1 - The bottom of the rectangle
+     * @param x2 - The right of the rectangle
+     * @param y2 - The top of the rectangle
+     * @param action - Given the index of each point found
+     */
+    public void inRect(double x1, double y1, double x2, double y2, IntConsumer action) {
+        if(order.limit() == 0) {return;}
+        inRect(0, x1, y1, x2, y2, action);
+    }
+
+    /**
+     * @return The squared distance from a location to the nearest part of a cell's bounding box
+     */
+    private double boxDist(int cell, double x, double y) {
+        double dx = Math.max(0, Math.max(minX(cell) - x, x - maxX(cell)));
+        double dy = Math.max(0, Math.max(minY(cell) - y, y - maxY(cell)));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @return The squared distance from a location to a point
+     */
+    private double pointDist(int p, double x, double y) {
+        double dx = xs.get(p) - x;
+        double dy = ys.get(p) - y;
+        return dx * dx + dy * dy;
+    }
+
+    private void nearest(int cell, double x, double y, int[] best, double[] bestDist) {
+        if(boxDist(cell, x, y) >= bestDist[0]) {return;}
+
+        if(childCount(cell) == 0) {
+            for(int i = start(cell); i < end(cell); i++) {
+                double d = pointDist(order.get(i), x, y);
+                if(d < bestDist[0]) {
+                    bestDist[0] = d;
+                    best[0] = order.get(i);
+                }
+            }
+            return;
+        }
+
+        // Look in the closest child first, so the others are more likely to be skipped
+        int first = firstChild(cell);
+        int closest = first;
+        for(int c = first + 1; c < first + childCount(cell); c++) {
+            if(boxDist(c, x, y) < boxDist(closest, x, y)) {closest = c;}
+        }
+        nearest(closest, x, y, best, bestDist);
+        for(int c = first; c < first + childCount(cell); c++) {
+            if(c != closest) {nearest(c, x, y, best, bestDist);}
+        }
+    }
+
+    private void kNearest(int cell, double x, double y, int[] heap, double[] heapDist, int[] size) {
+        if(size[0] == heap.length && boxDist(cell, x, y) >= heapDist[0]) {return;}
+
+        if(childCount(cell) == 0) {
+            for(int i = start(cell); i < end(cell); i++) {
+                double d = pointDist(order.get(i), x, y);
+                if(size[0] < heap.length) { // Not full yet, so add it
+                    int j = size[0]++;
+                    heap[j] = order.get(i);
+                    heapDist[j] = d;
+                    siftUp(heap, heapDist, j);
+                } else if(d < heapDist[0]) { // Better than the worst, so replace it
+                    heap[0] = order.get(i);
+                    heapDist[0] = d;
+                    siftDown(heap, heapDist, 0, size[0]);
+                }
+            }
+            return;
+        }
+
+        int first = firstChild(cell);
+        int closest = first;
+        for(int c = first + 1; c < first + childCount(cell); c++) {
+            if(boxDist(c, x, y) < boxDist(closest, x, y)) {closest = c;}
+        }
+        kNearest(closest, x, y, heap, heapDist, size);
+        for(int c = first; c < first + childCount(cell); c++) {
+            if(c != closest) {kNearest(c, x, y, heap, heapDist, size);}
+        }
+    }
+
+    private void withinRadius(int cell, double x, double y, double radius2, IntConsumer action) {
+        if(boxDist(cell, x, y) > radius2) {return;}
+
+        if(childCount(cell) == 0) {
+            for(int i = start(cell); i < end(cell); i++) {
+                if(pointDist(order.get(i), x, y) <= radius2) {action.accept(order.get(i));}
+            }
+            return;
+        }
+        for(int c = firstChild(cell); c < firstChild(cell) + childCount(cell); c++) {
+            withinRadius(c, x, y, radius2, action);
+        }
+    }
+
+    private void inRect(int cell, double x1, double y1, double x2, double y2, IntConsumer action) {
+        if(maxX(cell) < x1 || minX(cell) > x2 || maxY(cell) < y1 || minY(cell) > y2) {return;}
+
+        if(childCount(cell) == 0 || (minX(cell) >= x1 && maxX(cell) <= x2 && minY(cell) >= y1 && maxY(cell) <= y2)) {
+            // A leaf, or entirely inside the rectangle
+            for(int i = start(cell); i < end(cell); i++) {
+                int p = order.get(i);
+                if(xs.get(p) >= x1 && xs.get(p) <= x2 && ys.get(p) >= y1 && ys.get(p) <= y2) {action.accept(p);}
+            }
+            return;
+        }
+        for(int c = firstChild(cell); c < firstChild(cell) + childCount(cell); c++) {
+            inRect(c, x1, y1, x2, y2, action);
+        }
+    }
+
+    /**
+     * The parts of a cell.
+     */
+    private int start(int cell) {
+        return cells.get(cell * CELL_INTS + START);
+    }
+
+    private int end(int cell) {
+        return cells.get(cell * CELL_INTS + END);
+    }
+
+    private int firstChild(int cell) {
+        return cells.get(cell * CELL_INTS + FIRST_CHILD);
+    }
+
+    private int childCount(int cell) {
+        return cells.get(cell * CELL_INTS + CHILD_COUNT);
+    }
+
+    private double minX(int cell) {
+        return boxes.get(cell * CELL_DOUBLES + MIN_X);
+    }
+
+    private double minY(int cell) {
+        return boxes.get(cell * CELL_DOUBLES + MIN_Y);
+    }
+
+    private double maxX(int cell) {
+        return boxes.get(cell * CELL_DOUBLES + MAX_X);
+    }
+
+    private double maxY(int cell) {
+        return boxes.get(cell * CELL_DOUBLES + MAX_Y);
+    }
+
+    /**
+     * Max heap helpers for kNearest (the root is the furthest point found so far).
+     */
+    private static void siftUp(int[] heap, double[] dist, int i) {
+        while(i > 0) {
+            int parent = (i - 1) / 2;
+            if(dist[parent] >= dist[i]) {return;}
+            swap(heap, dist, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, double[] dist, int i, int size) {
+        while(true) {
+            int largest = i;
+            int l = 2 * i + 1, r = l + 1;
+            if(l < size && dist[l] > dist[largest]) {largest = l;}
+            if(r < size && dist[r] > dist[largest]) {largest = r;}
+            if(largest == i) {return;}
+            swap(heap, dist, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(int[] heap, double[] dist, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+        double d = dist[i];
+        dist[i] = dist[j];
+        dist[j] = d;
+    }
+
+    /**
+     * @return The point indexes, ordered so each cell's points are together
+     */
+    public IntBuffer getOrder() {
+        return order;
+    }
+
+    /**
+     * @return The range in getOrder() and the children of each cell
+     */
+    public IntBuffer getCells() {
+        return cells;
+    }
+
+    /**
+     * @return The bounding box of each cell
+     */
+    public DoubleBuffer getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * Builds the arrays of a quadtree. They grow as cells are added, so are only wrapped once it is done.
+     */
+    private static class Builder {
+
+        private final DoubleBuffer xs;
+        private final DoubleBuffer ys;
+        private final int[] order;
+        private int cellCount = 0;
+        private int[] cells = new int[64 * CELL_INTS];
+        private double[] boxes = new double[64 * CELL_DOUBLES];
+
+        Builder(DoubleBuffer xs, DoubleBuffer ys) {
+            this.xs = xs;
+            this.ys = ys;
+            order = new int[xs.limit()];
+            for(int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            if(order.length > 0) {
+                newCell(0, order.length);
+                build(0, 0);
+            }
+        }
+
+        /**
+         * Splits a cell into quarters, recursively.
+         */
+        private void build(int cell, int depth) {
+            int lo = cells[cell * CELL_INTS + START], hi = cells[cell * CELL_INTS + END];
+
+            // Work out the bounding box of the cell's points
+            double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+            double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+            for(int i = lo; i < hi; i++) {
+                int p = order[i];
+                x1 = Math.min(x1, xs.get(p));
+                y1 = Math.min(y1, ys.get(p));
+                x2 = Math.max(x2, xs.get(p));
+                y2 = Math.max(y2, ys.get(p));
+            }
+            boxes[cell * CELL_DOUBLES + MIN_X] = x1;
+            boxes[cell * CELL_DOUBLES + MIN_Y] = y1;
+            boxes[cell * CELL_DOUBLES + MAX_X] = x2;
+            boxes[cell * CELL_DOUBLES + MAX_Y] = y2;
+
+            if(hi - lo <= LEAF_SIZE || depth >= MAX_DEPTH || (x1 == x2 && y1 == y2)) {return;}
+
+            // Sort the points into the four quarters: left/right of the middle, then bottom/top within each half
+            double cx = (x1 + x2) / 2;
+            double cy = (y1 + y2) / 2;
+            int midX = partition(lo, hi, xs, cx);
+            int[] bounds = {lo, partition(lo, midX, ys, cy), midX, partition(midX, hi, ys, cy), hi};
+
+            // Make the (non empty) children next to each other, then build them
+            int first = cellCount;
+            for(int q = 0; q < 4; q++) {
+                if(bounds[q] < bounds[q + 1]) {
+                    newCell(bounds[q], bounds[q + 1]);
+                }
+            }
+            int count = cellCount - first;
+            cells[cell * CELL_INTS + FIRST_CHILD] = first;
+            cells[cell * CELL_INTS + CHILD_COUNT] = count;
+            for(int c = 0; c < count; c++) {
+                build(first + c, depth + 1);
+            }
+        }
+
+        /**
+         * Moves the points in order[lo, hi) with a coordinate less than split to the front.
+         *
+         * @return The index of the first point which isn't less than split
+         */
+        private int partition(int lo, int hi, DoubleBuffer coords, double split) {
+            int i = lo;
+            for(int j = lo; j < hi; j++) {
+                if(coords.get(order[j]) < split) {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                }
+            }
+            return i;
+        }
+
+        /**
+         * Adds a new (childless) cell covering order[lo, hi).
+         */
+        private void newCell(int lo, int hi) {
+            if((cellCount + 1) * CELL_INTS > cells.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+                boxes = Arrays.copyOf(boxes, boxes.length * 2);
+            }
+            cells[cellCount * CELL_INTS + START] = lo;
+            cells[cellCount * CELL_INTS + END] = hi;
+            cellCount++;
+        }
+    }
+}
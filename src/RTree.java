@@ -0,0 +1,305 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntConsumer;
+
+/**
+ * An R-tree over a set of bounding boxes, used to find the things which are (partly) inside a rectangle,
+ * like the segments which are on the screen.
+ *
+ * Boxes are referred to by their index in the arrays it was built from. The tree is bulk loaded with
+ * Sort-Tile-Recursive (STR): the boxes are sorted into vertical slices by the x of their centres, each slice
+ * is sorted by y, and runs of NODE_SIZE boxes become the leaves. The same is then done to the leaves to
+ * make the level above, and so on until there is one root. Everything is kept in primitive arrays, which are
+ * NIO buffers so that a GraphSnapshot can store them and use them straight from the file.
+ */
+public class RTree {
+
+    // The most children a tree node can have
+    private static final int NODE_SIZE = 16;
+
+    // The boxes being indexed, BOX doubles each (minX, minY, maxX, maxY)
+    private static final int BOX = 4, MIN_X = 0, MIN_Y = 1, MAX_X = 2, MAX_Y = 3;
+    private final DoubleBuffer itemBoxes;
+
+    // The box indexes, in the order the leaves refer to them
+    private final IntBuffer items;
+
+    // The tree nodes, with a (childStart, childEnd) pair in nodes and a box in boxes for each. The children of
+    // node n are items[childStart, childEnd) if n is a leaf (n < leafCount), and otherwise the nodes childStart
+    // to childEnd - 1. The root is the last node.
+    private final IntBuffer nodes;
+    private final DoubleBuffer boxes;
+    private final int nodeCount;
+    private final int leafCount;
+
+    /**
+     * Builds the R-tree.
+     *
+     * @param minX - The left of each box
+     * @param minY - The bottom of each box
+     * @param maxX - The right of each box
+     * @param maxY - The top of each box
+     */
+    public RTree(double[] minX, double[] minY, double[] maxX, double[] maxY) {
+        double[] itemBoxes = new double[minX.length * BOX];
+        for(int i = 0; i < minX.length; i++) {
+            itemBoxes[i * BOX + MIN_X] = minX[i];
+            itemBoxes[i * BOX + MIN_Y] = minY[i];
+            itemBoxes[i * BOX + MAX_X] = maxX[i];
+            itemBoxes[i * BOX + MAX_Y] = maxY[i];
+        }
+        this.itemBoxes = DoubleBuffer.wrap(itemBoxes);
+
+        Builder b = new Builder(minX, minY, maxX, maxY);
+        int[] nodes = new int[b.nodeCount * 2];
+        double[] boxes = new double[b.nodeCount * BOX];
+        for(int n = 0; n < b.nodeCount; n++) {
+            nodes[2 * n] = b.childStart[n];
+            nodes[2 * n + 1] = b.childEnd[n];
+            boxes[n * BOX + MIN_X] = b.minX[n];
+            boxes[n * BOX + MIN_Y] = b.minY[n];
+            boxes[n * BOX + MAX_X] = b.maxX[n];
+            boxes[n * BOX + MAX_Y] = b.maxY[n];
+        }
+        this.items = IntBuffer.wrap(b.items);
+        this.nodes = IntBuffer.wrap(nodes);
+        this.boxes = DoubleBuffer.wrap(boxes);
+        this.nodeCount = b.nodeCount;
+        this.leafCount = b.leafCount;
+    }
+
+    /**
+     * Makes the R-tree from arrays which were built before (by a GraphSnapshot).
+     *
+     * @param itemBoxes - What getItemBoxes() returned
+     * @param items - What getItems() returned
+     * @param nodes - What getNodes() returned
+     * @param boxes - What getBoxes() returned
+     * @param leafCount - What getLeafCount() returned
+     * @throws IllegalArgumentException - If the arrays aren't the right lengths for each other
+     */
+    public RTree(DoubleBuffer itemBoxes, IntBuffer items, IntBuffer nodes, DoubleBuffer boxes, int leafCount) {
+        if(itemBoxes.limit() != items.limit() * BOX || nodes.limit() % 2 != 0 || boxes.limit() != nodes.limit() / 2 * BOX
+                || leafCount < 0 || leafCount > nodes.limit() / 2 || (nodes.limit() == 0) != (items.limit() == 0)) {
+            throw new IllegalArgumentException("The R-tree doesn't fit its " + items.limit() + " boxes");
+        }
+        this.itemBoxes = itemBoxes;
+        this.items = items;
+        this.nodes = nodes;
+        this.boxes = boxes;
+        this.nodeCount = nodes.limit() / 2;
+        this.leafCount = leafCount;
+    }
+
+    /**
+     * Finds every box which overlaps a rectangle.
+     *
+     * @param x1 - The left of the rectangle
+     * @param y1 - The bottom of the rectangle
+     * @param x2 - The right of the rectangle
+     * @param y2 - The top of the rectangle
+     * @param action - Given the index of each box found
+     */
+    public void query(double x1, double y1, double x2, double y2, IntConsumer action) {
+        if(nodeCount == 0) {return;}
+        query(nodeCount - 1, x1, y1, x2, y2, action);
+    }
+
+    private void query(int n, double x1, double y1, double x2, double y2, IntConsumer action) {
+        if(boxes.get(n * BOX + MAX_X) < x1 || boxes.get(n * BOX + MIN_X) > x2
+                || boxes.get(n * BOX + MAX_Y) < y1 || boxes.get(n * BOX + MIN_Y) > y2) {return;}
+
+        int childStart = nodes.get(2 * n), childEnd = nodes.get(2 * n + 1);
+        if(n < leafCount) {
+            for(int i = childStart; i < childEnd; i++) {
+                int item = items.get(i);
+                if(itemBoxes.get(item * BOX + MAX_X) >= x1 && itemBoxes.get(item * BOX + MIN_X) <= x2
+                        && itemBoxes.get(item * BOX + MAX_Y) >= y1 && itemBoxes.get(item * BOX + MIN_Y) <= y2) {
+                    action.accept(item);
+                }
+            }
+        } else {
+            for(int c = childStart; c < childEnd; c++) {
+                query(c, x1, y1, x2, y2, action);
+            }
+        }
+    }
+
+    /**
+     * @return The boxes being indexed, as (minX, minY, maxX, maxY) for each
+     */
+    public DoubleBuffer getItemBoxes() {
+        return itemBoxes;
+    }
+
+    /**
+     * @return The box indexes, in the order the leaves refer to them
+     */
+    public IntBuffer getItems() {
+        return items;
+    }
+
+    /**
+     * @return The (childStart, childEnd) of each tree node
+     */
+    public IntBuffer getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The box of each tree node, as (minX, minY, maxX, maxY)
+     */
+    public DoubleBuffer getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * @return How many of the tree nodes are leaves (they come first)
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Builds the tree nodes with Sort-Tile-Recursive. They grow as nodes are added, so are only packed into
+     * the tree's arrays once it is done.
+     */
+    private static class Builder {
+
+        private final int[] items;
+        private int[] childStart;
+        private int[] childEnd;
+        private double[] minX;
+        private double[] minY;
+        private double[] maxX;
+        private double[] maxY;
+        private int nodeCount = 0;
+        private final int leafCount;
+
+        Builder(double[] minX, double[] minY, double[] maxX, double[] maxY) {
+            // There are about n/(NODE_SIZE-1) nodes in total
+            int capacity = minX.length / (NODE_SIZE - 1) + 16;
+            childStart = new int[capacity];
+            childEnd = new int[capacity];
+            this.minX = new double[capacity];
+            this.minY = new double[capacity];
+            this.maxX = new double[capacity];
+            this.maxY = new double[capacity];
+
+            // Leaves
+            items = strOrder(minX.length, minX, minY, maxX, maxY, 0);
+            for(int i = 0; i < items.length; i += NODE_SIZE) {
+                int n = newNode(i, Math.min(i + NODE_SIZE, items.length));
+                for(int j = i; j < childEnd[n]; j++) {
+                    grow(n, minX[items[j]], minY[items[j]], maxX[items[j]], maxY[items[j]]);
+                }
+            }
+            leafCount = nodeCount;
+
+            // The levels above, until there's only one node
+            int levelStart = 0;
+            while(nodeCount - levelStart > 1) {
+                int count = nodeCount - levelStart;
+
+                // Sort this level's nodes, and move them into that order so runs of them can become parents
+                int[] order = strOrder(count, this.minX, this.minY, this.maxX, this.maxY, levelStart);
+                permute(levelStart, order);
+
+                int nextLevel = nodeCount;
+                for(int i = levelStart; i < nextLevel; i += NODE_SIZE) {
+                    int n = newNode(i, Math.min(i + NODE_SIZE, nextLevel));
+                    for(int c = i; c < childEnd[n]; c++) {
+                        grow(n, this.minX[c], this.minY[c], this.maxX[c], this.maxY[c]);
+                    }
+                }
+                levelStart = nextLevel;
+            }
+        }
+
+        /**
+         * Works out the Sort-Tile-Recursive order of count boxes (the ones at offset onwards in the arrays).
+         *
+         * @return The box indexes (from 0, not offset) in STR order
+         */
+        private static int[] strOrder(int count, double[] x1, double[] y1, double[] x2, double[] y2, int offset) {
+            Integer[] order = new Integer[count];
+            for(int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+
+            // Sort by x into slices, then each slice by y
+            int leaves = (count + NODE_SIZE - 1) / NODE_SIZE;
+            int slices = (int) Math.ceil(Math.sqrt(leaves));
+            int sliceSize = slices * NODE_SIZE;
+            Arrays.sort(order, Comparator.comparingDouble(i -> x1[offset + i] + x2[offset + i]));
+            for(int s = 0; s < count; s += sliceSize) {
+                Arrays.sort(order, s, Math.min(s + sliceSize, count), Comparator.comparingDouble(i -> y1[offset + i] + y2[offset + i]));
+            }
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * Reorders the nodes from offset onwards so that node offset+i is the one which was at offset+order[i].
+         */
+        private void permute(int offset, int[] order) {
+            childStart = permute(childStart, offset, order);
+            childEnd = permute(childEnd, offset, order);
+            minX = permute(minX, offset, order);
+            minY = permute(minY, offset, order);
+            maxX = permute(maxX, offset, order);
+            maxY = permute(maxY, offset, order);
+        }
+
+        private static int[] permute(int[] a, int offset, int[] order) {
+            int[] old = Arrays.copyOfRange(a, offset, offset + order.length);
+            for(int i = 0; i < order.length; i++) {
+                a[offset + i] = old[order[i]];
+            }
+            return a;
+        }
+
+        private static double[] permute(double[] a, int offset, int[] order) {
+            double[] old = Arrays.copyOfRange(a, offset, offset + order.length);
+            for(int i = 0; i < order.length; i++) {
+                a[offset + i] = old[order[i]];
+            }
+            return a;
+        }
+
+        /**
+         * Adds a node with an empty box.
+         *
+         * @return The index of the new node
+         */
+        private int newNode(int start, int end) {
+            if(nodeCount == childStart.length) {
+                int n = nodeCount * 2;
+                childStart = Arrays.copyOf(childStart, n);
+                childEnd = Arrays.copyOf(childEnd, n);
+                minX = Arrays.copyOf(minX, n);
+                minY = Arrays.copyOf(minY, n);
+                maxX = Arrays.copyOf(maxX, n);
+                maxY = Arrays.copyOf(maxY, n);
+            }
+            childStart[nodeCount] = start;
+            childEnd[nodeCount] = end;
+            minX[nodeCount] = Double.POSITIVE_INFINITY;
+            minY[nodeCount] = Double.POSITIVE_INFINITY;
+            maxX[nodeCount] = Double.NEGATIVE_INFINITY;
+            maxY[nodeCount] = Double.NEGATIVE_INFINITY;
+            return nodeCount++;
+        }
+
+        /**
+         * Grows a node's box to include another box.
+         */
+        private void grow(int n, double x1, double y1, double x2, double y2) {
+            minX[n] = Math.min(minX[n], x1);
+            minY[n] = Math.min(minY[n], y1);
+            maxX[n] = Math.max(maxX[n], x2);
+            maxY[n] = Math.max(maxY[n], y2);
+        }
+    }
+}
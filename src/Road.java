@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 /**
  * A road is a sequences of segments, with a name and other properties.
  * These need not be an entire road - a real road that has different properties for some parts
@@ -19,6 +17,8 @@ public class Road {
     private boolean oneway;
     // Speed limit on the road
     private int speedLimit;
+    // Class of road (0 = residential up to 4 = major highway)
+    private int roadClass;
     // True if road is not for cars
     private boolean notforcar;
     // True if road is not for pedestrians
@@ -26,9 +26,6 @@ public class Road {
     // True if road is not for bicycles
     private boolean notforbicy;
 
-    // The list of all the segments connected to the road
-    private ArrayList<Segment> segmentList = new ArrayList<>();
-
     /**
      * Constructor
      * Create an instance of the road class, with the specified parameters.
@@ -39,11 +36,12 @@ public class Road {
      * @param roadCity - City the road is in
      * @param oneway - Whether or not the road is one way
      * @param speedLimit - Speed limit on the road
+     * @param roadClass - Class of road
      * @param notforcar - Whether or not cars are allowed on the road
      * @param notforpede - Whether or not pedestrians are allowed on the road
      * @param notforbicy - Whether or not bicycles are allowed on the road
      */
-    public Road(int roadID, int type, String roadName, String roadCity, boolean oneway, int speedLimit, boolean notforcar, boolean notforpede, boolean notforbicy) {
+    public Road(int roadID, int type, String roadName, String roadCity, boolean oneway, int speedLimit, int roadClass, boolean notforcar, boolean notforpede, boolean notforbicy) {
 
         // set the fields.
         this.roadID = roadID;
@@ -52,6 +50,7 @@ public class Road {
         this.roadCity = roadCity;
         this.oneway = oneway;
         this.speedLimit = speedLimit;
+        this.roadClass = roadClass;
         this.notforcar = notforcar;
         this.notforpede = notforpede;
         this.notforbicy = notforbicy;
@@ -74,10 +73,10 @@ public class Road {
     }
 
     /**
-     * @return Returns the class of the road
+     * @return Returns the class of the road in a string
      */
-    public String getRoadClass() {
-        switch (type) {
+    public String getRoadClassText() {
+        switch (roadClass) {
             case 1: return "Collector";
             case 2: return "Arterial";
             case 3: return "Principal HW";
@@ -168,6 +167,13 @@ public class Road {
         return speedLimit;
     }
 
+    /**
+     * @return The class of the road (0 = residential up to 4 = major highway)
+     */
+    public int getRoadClass() {
+        return roadClass;
+    }
+
     /**
      * @return Whether or not the road allows cars (true if no cars)
      */
@@ -188,11 +194,4 @@ public class Road {
     public boolean getNotforbicy() {
         return notforbicy;
     }
-
-    /**
-     * @return The list containing the segments that make up this road
-     */
-    public ArrayList<Segment> getSegmentList() {
-        return segmentList;
-    }
 }
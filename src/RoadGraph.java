@@ -0,0 +1,440 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The road graph, made entirely of primitive arrays. This is where a map's nodes and segments are kept:
+ * Node and Segment objects are just views of one index of it (see MapData.getNode and MapData.getSegment).
+ *
+ * Nodes, roads and segments are numbered densely from 0 (an index), rather than by the IDs in the files.
+ * Node and road indexes are in order of ID, so an ID can be turned into an index with a binary search,
+ * and segment indexes are in file order.
+ *
+ * The segments at each node are stored in compressed sparse row (CSR) form: the segments touching
+ * node i are adjSegments[adjStart[i]] up to (but not including) adjSegments[adjStart[i+1]].
+ * The segments of each road (roadSegStart/roadSegments), and the points along each segment
+ * (coordStart/coordX/coordY), are stored the same way.
+ *
+ * The arrays are NIO buffers, so that a graph read from a GraphSnapshot can use the memory mapped file
+ * as it is. A graph built from the .tab files just wraps ordinary arrays. Only the absolute get(i) is
+ * used on them, so they can be shared between threads.
+ */
+public class RoadGraph {
+
+    // Bits of the road flags
+    public static final int ONEWAY = 1;
+    public static final int NOT_FOR_CAR = 2;
+    public static final int NOT_FOR_PEDE = 4;
+    public static final int NOT_FOR_BICY = 8;
+
+    // Nodes: ID, and location
+    private final IntBuffer nodeIDs;
+    private final DoubleBuffer nodeX;
+    private final DoubleBuffer nodeY;
+
+    // The segments touching each node (CSR)
+    private final IntBuffer adjStart;
+    private final IntBuffer adjSegments;
+
+    // Segments: the indexes of the road and nodes, and the length
+    private final IntBuffer segRoad;
+    private final IntBuffer segNode1;
+    private final IntBuffer segNode2;
+    private final DoubleBuffer segLength;
+
+    // The points along each segment (CSR)
+    private final IntBuffer coordStart;
+    private final DoubleBuffer coordX;
+    private final DoubleBuffer coordY;
+
+    // Roads: ID, type, speed limit, class, and flags (one way, not for cars, etc)
+    private final IntBuffer roadIDs;
+    private final IntBuffer roadType;
+    private final IntBuffer roadSpeed;
+    private final IntBuffer roadClass;
+    private final ByteBuffer roadFlags;
+
+    // The segments of each road (CSR)
+    private final IntBuffer roadSegStart;
+    private final IntBuffer roadSegments;
+
+    /**
+     * Builds the graph from the parsed nodes, roads and segments. The nodes and roads must be in order of ID,
+     * and the segments refer to them by index.
+     *
+     * @param nodeIDs - The ID of each node, in order
+     * @param nodeX - The x coordinate of each node
+     * @param nodeY - The y coordinate of each node
+     * @param roads - The roads, in order of ID
+     * @param segRoad - The road index of each segment
+     * @param segNode1 - The start node index of each segment
+     * @param segNode2 - The end node index of each segment
+     * @param segLength - The length of each segment
+     * @param coordStart - Where each segment's points start in coordX/coordY (one longer than the number of segments)
+     * @param coordX - The x coordinate of every point of every segment
+     * @param coordY - The y coordinate of every point of every segment
+     */
+    public RoadGraph(int[] nodeIDs, double[] nodeX, double[] nodeY, List<Road> roads,
+                     int[] segRoad, int[] segNode1, int[] segNode2, double[] segLength,
+                     int[] coordStart, double[] coordX, double[] coordY) {
+        this.nodeIDs = IntBuffer.wrap(nodeIDs);
+        this.nodeX = DoubleBuffer.wrap(nodeX);
+        this.nodeY = DoubleBuffer.wrap(nodeY);
+        this.segRoad = IntBuffer.wrap(segRoad);
+        this.segNode1 = IntBuffer.wrap(segNode1);
+        this.segNode2 = IntBuffer.wrap(segNode2);
+        this.segLength = DoubleBuffer.wrap(segLength);
+        this.coordStart = IntBuffer.wrap(coordStart);
+        this.coordX = DoubleBuffer.wrap(coordX);
+        this.coordY = DoubleBuffer.wrap(coordY);
+
+        // Roads
+        int[] roadIDs = new int[roads.size()];
+        int[] roadType = new int[roadIDs.length];
+        int[] roadSpeed = new int[roadIDs.length];
+        int[] roadClass = new int[roadIDs.length];
+        byte[] roadFlags = new byte[roadIDs.length];
+        for(int i = 0; i < roadIDs.length; i++) {
+            Road r = roads.get(i);
+            roadIDs[i] = r.getRoadID();
+            roadType[i] = r.getType();
+            roadSpeed[i] = r.getSpeedLimit();
+            roadClass[i] = r.getRoadClass();
+            roadFlags[i] = (byte) ((r.getOneway() ? ONEWAY : 0)
+                    | (r.getNotforcar() ? NOT_FOR_CAR : 0)
+                    | (r.getNotforpede() ? NOT_FOR_PEDE : 0)
+                    | (r.getNotforbicy() ? NOT_FOR_BICY : 0));
+        }
+        this.roadIDs = IntBuffer.wrap(roadIDs);
+        this.roadType = IntBuffer.wrap(roadType);
+        this.roadSpeed = IntBuffer.wrap(roadSpeed);
+        this.roadClass = IntBuffer.wrap(roadClass);
+        this.roadFlags = ByteBuffer.wrap(roadFlags);
+
+        // Adjacency. Segments are added to both of their nodes.
+        int segmentCount = segLength.length;
+        int[] adjStart = new int[nodeIDs.length + 1];
+        for(int s = 0; s < segmentCount; s++) {
+            adjStart[segNode1[s] + 1]++;
+            adjStart[segNode2[s] + 1]++;
+        }
+        for(int i = 0; i < nodeIDs.length; i++) {
+            adjStart[i + 1] += adjStart[i];
+        }
+        int[] adjSegments = new int[adjStart[nodeIDs.length]];
+        int[] next = Arrays.copyOf(adjStart, nodeIDs.length);
+        for(int s = 0; s < segmentCount; s++) {
+            adjSegments[next[segNode1[s]]++] = s;
+            adjSegments[next[segNode2[s]]++] = s;
+        }
+        this.adjStart = IntBuffer.wrap(adjStart);
+        this.adjSegments = IntBuffer.wrap(adjSegments);
+
+        // The segments of each road, in the same way
+        int[] roadSegStart = new int[roadIDs.length + 1];
+        for(int s = 0; s < segmentCount; s++) {
+            roadSegStart[segRoad[s] + 1]++;
+        }
+        for(int i = 0; i < roadIDs.length; i++) {
+            roadSegStart[i + 1] += roadSegStart[i];
+        }
+        int[] roadSegments = new int[segmentCount];
+        next = Arrays.copyOf(roadSegStart, roadIDs.length);
+        for(int s = 0; s < segmentCount; s++) {
+            roadSegments[next[segRoad[s]]++] = s;
+        }
+        this.roadSegStart = IntBuffer.wrap(roadSegStart);
+        this.roadSegments = IntBuffer.wrap(roadSegments);
+    }
+
+    /**
+     * Makes the graph from arrays which have all already been worked out (by a GraphSnapshot).
+     * The getters say what each one holds.
+     *
+     * @throws IllegalArgumentException - If the arrays aren't the right lengths for each other
+     */
+    public RoadGraph(IntBuffer nodeIDs, DoubleBuffer nodeX, DoubleBuffer nodeY, IntBuffer adjStart, IntBuffer adjSegments,
+                     IntBuffer segRoad, IntBuffer segNode1, IntBuffer segNode2, DoubleBuffer segLength,
+                     IntBuffer coordStart, DoubleBuffer coordX, DoubleBuffer coordY,
+                     IntBuffer roadIDs, IntBuffer roadType, IntBuffer roadSpeed, IntBuffer roadClass, ByteBuffer roadFlags,
+                     IntBuffer roadSegStart, IntBuffer roadSegments) {
+        int nodes = nodeIDs.limit(), segments = segLength.limit(), roads = roadIDs.limit();
+        checkLength("node x", nodeX.limit(), nodes);
+        checkLength("node y", nodeY.limit(), nodes);
+        checkStart("adjacency", adjStart, nodes, adjSegments.limit());
+        checkLength("adjacent segment", adjSegments.limit(), 2 * segments);
+        checkLength("segment road", segRoad.limit(), segments);
+        checkLength("segment node 1", segNode1.limit(), segments);
+        checkLength("segment node 2", segNode2.limit(), segments);
+        checkStart("point", coordStart, segments, coordX.limit());
+        checkLength("point y", coordY.limit(), coordX.limit());
+        checkLength("road type", roadType.limit(), roads);
+        checkLength("road speed", roadSpeed.limit(), roads);
+        checkLength("road class", roadClass.limit(), roads);
+        checkLength("road flag", roadFlags.limit(), roads);
+        checkStart("road segment", roadSegStart, roads, roadSegments.limit());
+        checkLength("road segment", roadSegments.limit(), segments);
+
+        this.nodeIDs = nodeIDs;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.adjStart = adjStart;
+        this.adjSegments = adjSegments;
+        this.segRoad = segRoad;
+        this.segNode1 = segNode1;
+        this.segNode2 = segNode2;
+        this.segLength = segLength;
+        this.coordStart = coordStart;
+        this.coordX = coordX;
+        this.coordY = coordY;
+        this.roadIDs = roadIDs;
+        this.roadType = roadType;
+        this.roadSpeed = roadSpeed;
+        this.roadClass = roadClass;
+        this.roadFlags = roadFlags;
+        this.roadSegStart = roadSegStart;
+        this.roadSegments = roadSegments;
+    }
+
+    /**
+     * @throws IllegalArgumentException - If there aren't the expected number of something
+     */
+    private static void checkLength(String what, int length, int expected) {
+        if(length != expected) {
+            throw new IllegalArgumentException("There are " + length + " " + what + "s, not " + expected);
+        }
+    }
+
+    /**
+     * Checks the start array of a CSR list: one longer than the number of rows, from 0 up to the size of the list.
+     *
+     * @throws IllegalArgumentException - If it isn't
+     */
+    private static void checkStart(String what, IntBuffer start, int rows, int size) {
+        checkLength(what + " start", start.limit(), rows + 1);
+        if(start.get(0) != 0 || start.get(rows) != size) {
+            throw new IllegalArgumentException("The " + what + " starts don't cover the " + size + " " + what + "s");
+        }
+    }
+
+    /**
+     * @param nodeID - The ID of a node (from the file)
+     * @return The index of the node, or -1 if there is no node with that ID
+     */
+    public int nodeIndex(int nodeID) {
+        return indexOf(nodeIDs, nodeID);
+    }
+
+    /**
+     * @param roadID - The ID of a road (from the file)
+     * @return The index of the road, or -1 if there is no road with that ID
+     */
+    public int roadIndex(int roadID) {
+        return indexOf(roadIDs, roadID);
+    }
+
+    /**
+     * Binary searches an array of IDs.
+     *
+     * @param ids - The IDs, in order
+     * @param id - The ID to look for
+     * @return The index of the ID, or -1 if it isn't there
+     */
+    private static int indexOf(IntBuffer ids, int id) {
+        int lo = 0, hi = ids.limit() - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int m = ids.get(mid);
+            if(m < id) {
+                lo = mid + 1;
+            } else if(m > id) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param segment - The index of a segment
+     * @param node - The index of one of the segment's nodes
+     * @return The index of the node at the other end of the segment
+     */
+    public int otherNode(int segment, int node) {
+        return segNode1.get(segment) == node ? segNode2.get(segment) : segNode1.get(segment);
+    }
+
+    /**
+     * @param node - The index of a node
+     * @return The number of segments touching the node
+     */
+    public int degree(int node) {
+        return adjStart.get(node + 1) - adjStart.get(node);
+    }
+
+    /**
+     * @param road - The index of a road
+     * @param flag - One of ONEWAY, NOT_FOR_CAR, NOT_FOR_PEDE, NOT_FOR_BICY
+     * @return Whether the road has the flag
+     */
+    public boolean roadHas(int road, int flag) {
+        return (roadFlags.get(road) & flag) != 0;
+    }
+
+    /**
+     * @return The number of nodes
+     */
+    public int getNodeCount() {
+        return nodeIDs.limit();
+    }
+
+    /**
+     * @return The number of segments
+     */
+    public int getSegmentCount() {
+        return segLength.limit();
+    }
+
+    /**
+     * @return The number of roads
+     */
+    public int getRoadCount() {
+        return roadIDs.limit();
+    }
+
+    /**
+     * @return The node IDs, by node index
+     */
+    public IntBuffer getNodeIDs() {
+        return nodeIDs;
+    }
+
+    /**
+     * @return The x coordinate of each node
+     */
+    public DoubleBuffer getNodeX() {
+        return nodeX;
+    }
+
+    /**
+     * @return The y coordinate of each node
+     */
+    public DoubleBuffer getNodeY() {
+        return nodeY;
+    }
+
+    /**
+     * @return Where each node's segments start in getAdjSegments() (one longer than the number of nodes)
+     */
+    public IntBuffer getAdjStart() {
+        return adjStart;
+    }
+
+    /**
+     * @return The segments touching each node, grouped by node
+     */
+    public IntBuffer getAdjSegments() {
+        return adjSegments;
+    }
+
+    /**
+     * @return The road index of each segment
+     */
+    public IntBuffer getSegRoad() {
+        return segRoad;
+    }
+
+    /**
+     * @return The start node index of each segment
+     */
+    public IntBuffer getSegNode1() {
+        return segNode1;
+    }
+
+    /**
+     * @return The end node index of each segment
+     */
+    public IntBuffer getSegNode2() {
+        return segNode2;
+    }
+
+    /**
+     * @return The length of each segment
+     */
+    public DoubleBuffer getSegLength() {
+        return segLength;
+    }
+
+    /**
+     * @return Where each segment's points start in getCoordX()/getCoordY() (one longer than the number of segments)
+     */
+    public IntBuffer getCoordStart() {
+        return coordStart;
+    }
+
+    /**
+     * @return The x coordinate of every point of every segment
+     */
+    public DoubleBuffer getCoordX() {
+        return coordX;
+    }
+
+    /**
+     * @return The y coordinate of every point of every segment
+     */
+    public DoubleBuffer getCoordY() {
+        return coordY;
+    }
+
+    /**
+     * @return Where each road's segments start in getRoadSegments() (one longer than the number of roads)
+     */
+    public IntBuffer getRoadSegStart() {
+        return roadSegStart;
+    }
+
+    /**
+     * @return The segments of each road, grouped by road
+     */
+    public IntBuffer getRoadSegments() {
+        return roadSegments;
+    }
+
+    /**
+     * @return The road IDs, by road index
+     */
+    public IntBuffer getRoadIDs() {
+        return roadIDs;
+    }
+
+    /**
+     * @return The type of each road
+     */
+    public IntBuffer getRoadType() {
+        return roadType;
+    }
+
+    /**
+     * @return The speed limit category of each road
+     */
+    public IntBuffer getRoadSpeed() {
+        return roadSpeed;
+    }
+
+    /**
+     * @return The class of each road
+     */
+    public IntBuffer getRoadClass() {
+        return roadClass;
+    }
+
+    /**
+     * @return The flags of each road (ONEWAY, NOT_FOR_CAR, NOT_FOR_PEDE and NOT_FOR_BICY)
+     */
+    public ByteBuffer getRoadFlags() {
+        return roadFlags;
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs road searches on a background thread, so typing in the search box never holds up the window.
+ *
+ * A search only starts once the user has stopped typing for DEBOUNCE_MS. Starting a new search cancels
+ * one which is still waiting, and the results of a search which has been overtaken by a newer one are
+ * thrown away, so only the latest search ever reaches the screen. The results are handed over on the
+ * event dispatch thread all at once.
+ */
+public class RoadSearch {
+
+    // How long to wait after a key press before searching
+    private static final long DEBOUNCE_MS = 120;
+
+    // The most roads a prefix search will find
+    private static final int MAX_RESULTS = 100;
+    // The most typos allowed when nothing matches the search exactly (only one for short searches)
+    private static final int MAX_TYPOS = 2;
+    private static final int SHORT_SEARCH = 5;
+
+    // Runs the searches, one at a time
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "road-search");
+        t.setDaemon(true); // Don't stop the program from quitting
+        return t;
+    });
+
+    // Counts up with every new search, so old ones can tell they've been overtaken
+    private final AtomicLong latest = new AtomicLong();
+
+    // The search which is waiting to run (if there is one)
+    private ScheduledFuture<?> pending;
+
+    // Where the last search got to in the trie (only used on the search thread)
+    private TrieCursor<Road> cursor;
+
+    // Given the results of each search (null if nothing was found), on the event dispatch thread
+    private final Consumer<List<Road>> onResults;
+
+    /**
+     * Constructor
+     *
+     * @param onResults - Given the results of each search (null if nothing was found), on the event dispatch thread
+     */
+    public RoadSearch(Consumer<List<Road>> onResults) {
+        this.onResults = onResults;
+    }
+
+    /**
+     * Starts a search, replacing any search which hasn't finished yet.
+     *
+     * @param trie - The roads to search
+     * @param search - The text in the search box
+     */
+    public void search(Trie<Road> trie, String search) {
+        long id = cancel();
+        pending = EXECUTOR.schedule(() -> {
+            // Carry on from the last search, unless the map has changed since
+            if(cursor == null || cursor.getTrie() != trie) {
+                cursor = new TrieCursor<Road>(trie, MAX_RESULTS);
+            }
+            List<Road> results = find(cursor, search);
+            SwingUtilities.invokeLater(() -> {
+                if(latest.get() == id) {onResults.accept(results);}
+            });
+        }, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the current search (if there is one), so its results are never handed over.
+     *
+     * @return The number of the next search
+     */
+    public long cancel() {
+        if(pending != null) {pending.cancel(false);}
+        pending = null;
+        return latest.incrementAndGet();
+    }
+
+    /**
+     * Searches for roads. An exact name only gets the roads with that name, otherwise get the best matches
+     * for the prefix, and if nothing starts with it, the roads within a typo or two of it.
+     * The cursor is moved on from the last search, so only the characters which changed are looked at.
+     *
+     * @param cursor - Where the last search got to in the roads
+     * @param search - The text to search for
+     * @return The roads which were found, or null if there weren't any
+     */
+    public static List<Road> find(TrieCursor<Road> cursor, String search) {
+        cursor.moveTo(search);
+        List<Road> roads = cursor.getExact();
+        if(roads == null) {
+            roads = cursor.top();
+        }
+        // Nothing starts with the search, so it might have a typo in it
+        if(roads == null && !search.isEmpty()) {
+            roads = cursor.getTrie().fuzzy(search, search.length() < SHORT_SEARCH ? 1 : MAX_TYPOS);
+            if(roads.isEmpty()) {roads = null;}
+        }
+        return roads;
+    }
+}
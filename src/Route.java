@@ -0,0 +1,58 @@
+/**
+ * A route found by the RoutePlanner: the nodes and segments along it, in order, and what it cost.
+ * Nodes and segments are indexes into the RoadGraph.
+ */
+public class Route {
+
+    // The nodes along the route, from the start to the end
+    private final int[] nodes;
+    // The segments along the route (one less than the nodes)
+    private final int[] segments;
+    // The total cost, as worked out by the route profile
+    private final double cost;
+    // The total length, in km
+    private final double length;
+
+    /**
+     * Constructor
+     *
+     * @param nodes - The nodes along the route, from the start to the end
+     * @param segments - The segments along the route
+     * @param cost - The total cost
+     * @param length - The total length, in km
+     */
+    public Route(int[] nodes, int[] segments, double cost, double length) {
+        this.nodes = nodes;
+        this.segments = segments;
+        this.cost = cost;
+        this.length = length;
+    }
+
+    /**
+     * @return The nodes along the route, from the start to the end
+     */
+    public int[] getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The segments along the route
+     */
+    public int[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return The total cost, as worked out by the route profile
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return The total length, in km
+     */
+    public double getLength() {
+        return length;
+    }
+}
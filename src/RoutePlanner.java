@@ -0,0 +1,429 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds routes between nodes of the road graph with A* search.
+ *
+ * The cost of each segment comes from a RouteProfile, which also says which roads can be used and
+ * whether one way roads have to be followed. The heuristic is the straight line distance to the
+ * destination, times the profile's lowest cost per km (so for travel time, it is the time it would
+ * take at the top speed). It is also scaled down by the smallest ratio of a segment's length to the
+ * straight line between its nodes, so that it never overestimates even where a segment's recorded
+ * length is a bit shorter than the straight line. That makes the heuristic consistent, so a node never
+ * needs to be looked at again once it has been settled, and the route found is always the best one.
+ *
+ * With TurnRestrictions, the search is edge based (turn expanded) instead: each state is a segment and the
+ * direction it was travelled in, so the same intersection can be reached along different roads, and a turn
+ * is only banned when it is made from the road in the restriction. Intersections without any banned turns
+ * are only checked with a single comparison.
+ *
+ * The search state (costs, back links, and the heap) is kept in primitive arrays, one set per thread,
+ * and reused from search to search. Instead of clearing the arrays each time, every search has a new
+ * number, and an entry only counts if it was written with the current number.
+ */
+public class RoutePlanner {
+
+    // The road graph
+    private final RoadGraph graph;
+
+    // The smallest ratio of segment length to straight line distance (at most 1)
+    private final double stretch;
+
+    // The search state for each thread which plans routes, by node, and by segment and direction
+    private final ThreadLocal<SearchState> state;
+    private final ThreadLocal<SearchState> turnState;
+
+    /**
+     * Constructor
+     *
+     * @param graph - The road graph to find routes on
+     */
+    public RoutePlanner(RoadGraph graph) {
+        this.graph = graph;
+        this.state = ThreadLocal.withInitial(() -> new SearchState(graph.getNodeCount()));
+        this.turnState = ThreadLocal.withInitial(() -> new SearchState(2 * graph.getSegmentCount()));
+
+        DoubleBuffer x = graph.getNodeX();
+        DoubleBuffer y = graph.getNodeY();
+        IntBuffer node1 = graph.getSegNode1();
+        IntBuffer node2 = graph.getSegNode2();
+        DoubleBuffer length = graph.getSegLength();
+        double min = 1;
+        for(int s = 0; s < graph.getSegmentCount(); s++) {
+            double straight = Math.hypot(x.get(node1.get(s)) - x.get(node2.get(s)), y.get(node1.get(s)) - y.get(node2.get(s)));
+            if(straight > 0) {min = Math.min(min, length.get(s) / straight);}
+        }
+        stretch = min;
+    }
+
+    /**
+     * Finds the best route between two nodes.
+     *
+     * @param from - The index of the start node
+     * @param to - The index of the end node
+     * @param profile - Decides which roads can be used, and what they cost
+     * @return The route, or null if the end can't be reached from the start
+     */
+    public Route route(int from, int to, RouteProfile profile) {
+        SearchState s = state.get();
+        s.reset();
+
+        DoubleBuffer x = graph.getNodeX();
+        DoubleBuffer y = graph.getNodeY();
+        double perKm = profile.minCostPerKm(graph) * stretch;
+
+        s.reach(from, 0, -1);
+        s.heap.push(from, perKm * Math.hypot(x.get(from) - x.get(to), y.get(from) - y.get(to)));
+
+        while(!s.heap.isEmpty()) {
+            int node = s.heap.pop();
+            s.settle(node);
+            if(node == to) {
+                return s.route(graph, from, to);
+            }
+            relax(s, node, profile, perKm, x.get(to), y.get(to));
+        }
+        return null;
+    }
+
+    /**
+     * Finds the cost of the best route from one node to each of a set of nodes, with one Dijkstra search
+     * which stops once every target has been settled.
+     *
+     * @param from - The index of the start node
+     * @param targets - The indexes of the nodes to find the costs to
+     * @param profile - Decides which roads can be used, and what they cost
+     * @param costs - Where to put the costs (infinity if a target can't be reached)
+     * @param offset - Where in costs to put the cost to the first target
+     */
+    public void costs(int from, int[] targets, RouteProfile profile, double[] costs, int offset) {
+        SearchState s = state.get();
+        s.reset();
+
+        // Mark the targets (the same node could be in the list more than once)
+        int remaining = 0;
+        for(int t : targets) {
+            if(!s.isTarget(t)) {
+                s.markTarget(t);
+                remaining++;
+            }
+        }
+
+        s.reach(from, 0, -1);
+        s.heap.push(from, 0);
+        while(remaining > 0 && !s.heap.isEmpty()) {
+            int node = s.heap.pop();
+            s.settle(node);
+            if(s.isTarget(node)) {remaining--;}
+            relax(s, node, profile, 0, 0, 0);
+        }
+
+        for(int i = 0; i < targets.length; i++) {
+            costs[offset + i] = s.isSettled(targets[i]) ? s.cost[targets[i]] : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Finds everything which can be reached from a node within a budget (an isochrone), with a Dijkstra search
+     * which stops as soon as the next node would be over the budget.
+     *
+     * A segment is reachable if it can be started along from a node within the budget, and its time is the time
+     * it is started along (from whichever end is reached first).
+     *
+     * @param from - The index of the start node
+     * @param profile - Decides which roads can be used, and what they cost (for a time budget, use a fastest() profile)
+     * @param budget - The most cost allowed
+     * @return The reachable segments, and when they are reached
+     */
+    public Isochrone isochrone(int from, RouteProfile profile, double budget) {
+        SearchState s = state.get();
+        s.reset();
+
+        // The nodes within the budget, in the order they were settled
+        int[] nodes = new int[64];
+        int count = 0;
+        s.reach(from, 0, -1);
+        s.heap.push(from, 0);
+        while(!s.heap.isEmpty() && s.heap.peekKey() <= budget) {
+            int node = s.heap.pop();
+            s.settle(node);
+            if(count == nodes.length) {nodes = Arrays.copyOf(nodes, count * 2);}
+            nodes[count++] = node;
+            relax(s, node, profile, 0, 0, 0);
+        }
+
+        // Each segment leaving those nodes, counted once at whichever end reaches it first
+        IntBuffer adjStart = graph.getAdjStart();
+        IntBuffer adjSegments = graph.getAdjSegments();
+        int[] segments = new int[64];
+        double[] times = new double[64];
+        int segmentCount = 0;
+        for(int n = 0; n < count; n++) {
+            int node = nodes[n];
+            for(int i = adjStart.get(node); i < adjStart.get(node + 1); i++) {
+                int seg = adjSegments.get(i);
+                if(!canTravel(seg, node, profile)) {continue;}
+
+                int other = graph.otherNode(seg, node);
+                if(other == node) {
+                    // A loop is in the node's list twice, so only count the first
+                    if(!isFirst(seg, i, adjStart.get(node))) {continue;}
+                } else if(s.isSettled(other) && canTravel(seg, other, profile)
+                        && (s.cost[other] < s.cost[node] || (s.cost[other] == s.cost[node] && other < node))) {
+                    continue;
+                }
+
+                if(segmentCount == segments.length) {
+                    segments = Arrays.copyOf(segments, segmentCount * 2);
+                    times = Arrays.copyOf(times, segmentCount * 2);
+                }
+                segments[segmentCount] = seg;
+                times[segmentCount] = s.cost[node];
+                segmentCount++;
+            }
+        }
+        return new Isochrone(budget, Arrays.copyOf(segments, segmentCount), Arrays.copyOf(times, segmentCount), count);
+    }
+
+    /**
+     * @return Whether adjSegments[i] is the first place seg appears in adjSegments from start on
+     */
+    private boolean isFirst(int seg, int i, int start) {
+        IntBuffer adjSegments = graph.getAdjSegments();
+        for(int j = start; j < i; j++) {
+            if(adjSegments.get(j) == seg) {return false;}
+        }
+        return true;
+    }
+
+    /**
+     * @param seg - The index of a segment
+     * @param node - The index of one of the segment's nodes
+     * @param profile - Decides which roads can be used
+     * @return Whether the segment can be travelled along starting from the node
+     */
+    private boolean canTravel(int seg, int node, RouteProfile profile) {
+        int road = graph.getSegRoad().get(seg);
+        if(!profile.canUse(graph, road)) {return false;}
+        // One way roads go from node 1 to node 2
+        return graph.getSegNode1().get(seg) == node || !graph.roadHas(road, RoadGraph.ONEWAY) || !profile.obeysOneway(graph, road);
+    }
+
+    /**
+     * Reaches out from a node which has just been settled, along every segment the profile allows.
+     * Nodes are queued by their cost plus perKm times the straight line distance to (toX, toY).
+     */
+    private void relax(SearchState s, int node, RouteProfile profile, double perKm, double toX, double toY) {
+        DoubleBuffer x = graph.getNodeX();
+        DoubleBuffer y = graph.getNodeY();
+        IntBuffer adjStart = graph.getAdjStart();
+        IntBuffer adjSegments = graph.getAdjSegments();
+
+        double cost = s.cost[node];
+        for(int i = adjStart.get(node); i < adjStart.get(node + 1); i++) {
+            int seg = adjSegments.get(i);
+            if(!canTravel(seg, node, profile)) {continue;}
+
+            int next = graph.otherNode(seg, node);
+            if(s.isSettled(next)) {continue;}
+            double nextCost = cost + profile.cost(graph, seg);
+            if(!s.isReached(next) || nextCost < s.cost[next]) {
+                s.reach(next, nextCost, seg);
+                s.heap.push(next, perKm == 0 ? nextCost : nextCost + perKm * Math.hypot(x.get(next) - toX, y.get(next) - toY));
+            }
+        }
+    }
+
+    /**
+     * Finds the best route between two nodes, without making any banned turns.
+     * Each state of the search is a segment travelled in one direction: 2 * segment for node 1 to node 2,
+     * and 2 * segment + 1 for node 2 to node 1.
+     *
+     * @param from - The index of the start node
+     * @param to - The index of the end node
+     * @param profile - Decides which roads can be used, and what they cost
+     * @param restrictions - The banned turns
+     * @return The route, or null if the end can't be reached from the start
+     */
+    public Route route(int from, int to, RouteProfile profile, TurnRestrictions restrictions) {
+        if(from == to) {return new Route(new int[]{from}, new int[0], 0, 0);}
+        SearchState s = turnState.get();
+        s.reset();
+
+        DoubleBuffer x = graph.getNodeX();
+        DoubleBuffer y = graph.getNodeY();
+        IntBuffer adjStart = graph.getAdjStart();
+        IntBuffer adjSegments = graph.getAdjSegments();
+        IntBuffer segRoad = graph.getSegRoad();
+        IntBuffer segNode1 = graph.getSegNode1();
+        IntBuffer segNode2 = graph.getSegNode2();
+        double perKm = profile.minCostPerKm(graph) * stretch;
+        double toX = x.get(to);
+        double toY = y.get(to);
+
+        // Start with nowhere to come from, then take each state off the heap in turn
+        int current = -1;
+        int node = from;
+        double cost = 0;
+        while(true) {
+            int inSeg = current >>> 1;
+            boolean restricted = current >= 0 && restrictions.hasAny(node);
+
+            for(int i = adjStart.get(node); i < adjStart.get(node + 1); i++) {
+                int seg = adjSegments.get(i);
+                int road = segRoad.get(seg);
+                if(!profile.canUse(graph, road)) {continue;}
+                // One way roads go from node 1 to node 2
+                boolean forwards = segNode1.get(seg) == node;
+                if(!forwards && graph.roadHas(road, RoadGraph.ONEWAY) && profile.obeysOneway(graph, road)) {continue;}
+                if(restricted && restrictions.isBanned(graph, node, inSeg, seg)) {continue;}
+
+                int next = forwards ? 2 * seg : 2 * seg + 1;
+                if(s.isSettled(next)) {continue;}
+                double nextCost = cost + profile.cost(graph, seg);
+                if(!s.isReached(next) || nextCost < s.cost[next]) {
+                    s.reach(next, nextCost, current);
+                    int end = forwards ? segNode2.get(seg) : segNode1.get(seg);
+                    s.heap.push(next, nextCost + perKm * Math.hypot(x.get(end) - toX, y.get(end) - toY));
+                }
+            }
+
+            if(s.heap.isEmpty()) {return null;}
+            current = s.heap.pop();
+            s.settle(current);
+            node = (current & 1) == 0 ? segNode2.get(current >>> 1) : segNode1.get(current >>> 1);
+            cost = s.cost[current];
+            if(node == to) {
+                return s.turnRoute(graph, from, current);
+            }
+        }
+    }
+
+    /**
+     * @return The road graph
+     */
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * The arrays used by one search, indexed by node (or by state, for a turn expanded search).
+     * A thread keeps one of these, and reuses it for each search.
+     */
+    private static class SearchState {
+
+        // The heap of nodes which have been reached but not settled
+        private final NodeHeap heap;
+
+        // The best cost found so far to each node, and the segment it was reached by
+        private final double[] cost;
+        private final int[] via;
+
+        // The number of the search which last reached/settled/marked as a target each node
+        private final int[] reached;
+        private final int[] settled;
+        private final int[] target;
+
+        // The number of the current search
+        private int search = 0;
+
+        SearchState(int nodeCount) {
+            heap = new NodeHeap(nodeCount);
+            cost = new double[nodeCount];
+            via = new int[nodeCount];
+            reached = new int[nodeCount];
+            settled = new int[nodeCount];
+            target = new int[nodeCount];
+        }
+
+        /**
+         * Starts a new search.
+         */
+        void reset() {
+            heap.clear();
+            search++;
+            // Start the numbers again if they run out
+            if(search == Integer.MAX_VALUE) {
+                Arrays.fill(reached, 0);
+                Arrays.fill(settled, 0);
+                Arrays.fill(target, 0);
+                search = 1;
+            }
+        }
+
+        void reach(int node, double c, int segment) {
+            reached[node] = search;
+            cost[node] = c;
+            via[node] = segment;
+        }
+
+        boolean isReached(int node) {
+            return reached[node] == search;
+        }
+
+        void settle(int node) {
+            settled[node] = search;
+        }
+
+        boolean isSettled(int node) {
+            return settled[node] == search;
+        }
+
+        void markTarget(int node) {
+            target[node] = search;
+        }
+
+        boolean isTarget(int node) {
+            return target[node] == search;
+        }
+
+        /**
+         * Follows the back links from the end to the start.
+         */
+        Route route(RoadGraph graph, int from, int to) {
+            int count = 0;
+            for(int node = to; node != from; node = graph.otherNode(via[node], node)) {
+                count++;
+            }
+
+            int[] nodes = new int[count + 1];
+            int[] segments = new int[count];
+            double length = 0;
+            int node = to;
+            nodes[count] = to;
+            for(int i = count - 1; i >= 0; i--) {
+                segments[i] = via[node];
+                length += graph.getSegLength().get(via[node]);
+                node = graph.otherNode(via[node], node);
+                nodes[i] = node;
+            }
+            return new Route(nodes, segments, cost[to], length);
+        }
+
+        /**
+         * Follows the back links from the last state (segment and direction) to the first one.
+         */
+        Route turnRoute(RoadGraph graph, int from, int last) {
+            int count = 0;
+            for(int st = last; st >= 0; st = via[st]) {
+                count++;
+            }
+
+            int[] segments = new int[count];
+            int i = count;
+            for(int st = last; st >= 0; st = via[st]) {
+                segments[--i] = st >>> 1;
+            }
+
+            int[] nodes = new int[count + 1];
+            double length = 0;
+            nodes[0] = from;
+            for(int j = 0; j < count; j++) {
+                nodes[j + 1] = graph.otherNode(segments[j], nodes[j]);
+                length += graph.getSegLength().get(segments[j]);
+            }
+            return new Route(nodes, segments, cost[last], length);
+        }
+    }
+}
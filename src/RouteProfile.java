@@ -0,0 +1,182 @@
+import java.util.AbstractMap;
+import java.util.Map;
+
+/**
+ * Decides which roads a route can use, and what it costs to travel along a segment.
+ *
+ * The built in profiles are made with shortest() (cost is the length in km) and fastest() (cost is the
+ * travel time in minutes), for a way of getting around. Other profiles can be plugged into the
+ * RoutePlanner by implementing this interface.
+ *
+ * A profile also has to give a lower bound on the cost of each km of straight line, which the
+ * RoutePlanner uses for its A* heuristic. If this is too big, routes may not be the best ones.
+ */
+public interface RouteProfile {
+
+    // The speed of each speed limit category, in km/h (the last one is "no limit")
+    int[] SPEED_KMH = {5, 20, 40, 60, 80, 100, 110, 110};
+
+    // How close to the speed limit traffic gets on each class of road (minor roads have more intersections to slow down for)
+    double[] CLASS_FACTOR = {0.6, 0.7, 0.8, 0.9, 1.0};
+
+    /**
+     * A way of getting around: which roads it can use, whether it has to follow one way roads, and how fast it can go.
+     */
+    enum Mode {
+        CAR(RoadGraph.NOT_FOR_CAR, true, Double.POSITIVE_INFINITY),
+        BICYCLE(RoadGraph.NOT_FOR_BICY, true, 20),
+        WALKING(RoadGraph.NOT_FOR_PEDE, false, 5);
+
+        // The road flag which means this mode can't use the road
+        private final int notFor;
+        // Whether this mode has to go the right way along one way roads
+        private final boolean obeysOneway;
+        // The fastest this mode can go, in km/h
+        private final double topSpeed;
+
+        Mode(int notFor, boolean obeysOneway, double topSpeed) {
+            this.notFor = notFor;
+            this.obeysOneway = obeysOneway;
+            this.topSpeed = topSpeed;
+        }
+    }
+
+    /**
+     * @param graph - The road graph
+     * @param road - The index of a road
+     * @return Whether routes can use the road at all
+     */
+    boolean canUse(RoadGraph graph, int road);
+
+    /**
+     * @param graph - The road graph
+     * @param road - The index of a road
+     * @return Whether routes have to go from node 1 to node 2 along the road's segments, if it is one way
+     */
+    boolean obeysOneway(RoadGraph graph, int road);
+
+    /**
+     * @param graph - The road graph
+     * @param segment - The index of a segment
+     * @return The cost of travelling along the segment (never negative)
+     */
+    double cost(RoadGraph graph, int segment);
+
+    /**
+     * This is asked for at the start of every search, so it should be quick (or remembered) for a graph.
+     *
+     * @param graph - The road graph
+     * @return A lower bound of the cost per km, for every segment a route can use
+     */
+    double minCostPerKm(RoadGraph graph);
+
+    /**
+     * Works out everything a profile says about a graph up front, so that searches which look at most of the
+     * graph (like the many searches of a TravelMatrix) only need to look things up in arrays.
+     *
+     * @param graph - The road graph
+     * @param profile - The profile
+     * @return A profile which gives the same answers as the original one, for this graph only
+     */
+    static RouteProfile precompute(RoadGraph graph, RouteProfile profile) {
+        boolean[] canUse = new boolean[graph.getRoadCount()];
+        boolean[] obeysOneway = new boolean[graph.getRoadCount()];
+        for(int r = 0; r < canUse.length; r++) {
+            canUse[r] = profile.canUse(graph, r);
+            obeysOneway[r] = profile.obeysOneway(graph, r);
+        }
+        double[] cost = new double[graph.getSegmentCount()];
+        for(int s = 0; s < cost.length; s++) {
+            if(canUse[graph.getSegRoad().get(s)]) {cost[s] = profile.cost(graph, s);}
+        }
+        double minCostPerKm = profile.minCostPerKm(graph);
+
+        return new RouteProfile() {
+            public boolean canUse(RoadGraph g, int road) {
+                return canUse[road];
+            }
+
+            public boolean obeysOneway(RoadGraph g, int road) {
+                return obeysOneway[road];
+            }
+
+            public double cost(RoadGraph g, int segment) {
+                return cost[segment];
+            }
+
+            public double minCostPerKm(RoadGraph g) {
+                return minCostPerKm;
+            }
+        };
+    }
+
+    /**
+     * @param mode - The way of getting around
+     * @return A profile where the cost is the length in km
+     */
+    static RouteProfile shortest(Mode mode) {
+        return new RouteProfile() {
+            public boolean canUse(RoadGraph graph, int road) {
+                return !graph.roadHas(road, mode.notFor);
+            }
+
+            public boolean obeysOneway(RoadGraph graph, int road) {
+                return mode.obeysOneway;
+            }
+
+            public double cost(RoadGraph graph, int segment) {
+                return graph.getSegLength().get(segment);
+            }
+
+            public double minCostPerKm(RoadGraph graph) {
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * @param mode - The way of getting around
+     * @return A profile where the cost is the travel time in minutes, from the speed limit and class of the road
+     */
+    static RouteProfile fastest(Mode mode) {
+        return new RouteProfile() {
+            // The graph the lower bound was last worked out for, and the bound (together, so threads always see a matching pair)
+            private volatile Map.Entry<RoadGraph, Double> minCost;
+
+            public boolean canUse(RoadGraph graph, int road) {
+                return !graph.roadHas(road, mode.notFor);
+            }
+
+            public boolean obeysOneway(RoadGraph graph, int road) {
+                return mode.obeysOneway;
+            }
+
+            public double cost(RoadGraph graph, int segment) {
+                return graph.getSegLength().get(segment) * 60 / speed(graph, graph.getSegRoad().get(segment));
+            }
+
+            public double minCostPerKm(RoadGraph graph) {
+                Map.Entry<RoadGraph, Double> m = minCost;
+                if(m == null || m.getKey() != graph) {
+                    // The fastest road this mode can use
+                    double top = 0;
+                    for(int r = 0; r < graph.getRoadCount(); r++) {
+                        if(canUse(graph, r)) {top = Math.max(top, speed(graph, r));}
+                    }
+                    m = new AbstractMap.SimpleImmutableEntry<>(graph, top == 0 ? 0 : 60 / top);
+                    minCost = m;
+                }
+                return m.getValue();
+            }
+
+            /**
+             * @return The speed along a road, in km/h
+             */
+            private double speed(RoadGraph graph, int road) {
+                int limit = Math.min(Math.max(graph.getRoadSpeed().get(road), 0), SPEED_KMH.length - 1);
+                int roadClass = Math.min(Math.max(graph.getRoadClass().get(road), 0), CLASS_FACTOR.length - 1);
+                return Math.min(SPEED_KMH[limit] * CLASS_FACTOR[roadClass], mode.topSpeed);
+            }
+        };
+    }
+}
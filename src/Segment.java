@@ -1,115 +1,79 @@
 import java.awt.*;
-import java.util.ArrayList;
 
 /**
  * A road segment is a part of a road between two nodes. The only intersections on a road segment are at its ends.
+ *
+ * Like a Node, a Segment is a view of one segment of a map's RoadGraph, which holds its nodes, length and points.
  */
 public class Segment {
 
-    // The road the segment belongs to
-    private Road road;
-    // The length of the segment
-    private double length;
-    // The segment's start node
-    private Node node1;
-    // The segment's end node
-    private Node node2;
-    // A list of all the points along the segment
-    private ArrayList<Location> locations = new ArrayList<>();
-    // Whether or not this segment is highlighted.
-    private boolean highlight = false;
+    // The map the segment is in
+    private final MapData map;
+    // The index of the segment in the map's RoadGraph
+    private final int index;
+
+    // Pixel positions used while drawing. Segments are only drawn on the event dispatch thread, so they can all share one.
+    private static final PointBuffer buffer = new PointBuffer();
 
     /**
      * Constructor
-     * Create an instance of the segment class.
+     * Create a view of a segment of a map.
      *
-     * @param road - The road the segment belongs to
-     * @param length - The length of the segment
-     * @param node1 - The segment's start node
-     * @param node2 - The segment's end node
-     * @param coords - A list of all the points along the segment
+     * @param map - The map the segment is in
+     * @param index - The index of the segment in the map's RoadGraph
      */
-    public Segment(Road road, double length, Node node1, Node node2, String[] coords) {
-        this.road = road;
-        this.length = length;
-        this.node1 = node1;
-        this.node2 = node2;
-
-        // Convert coords from String[] to an ArrayList of locations
-        for(int i = 0; i < coords.length; i+=2) {
-            locations.add(Location.newFromLatLon(Double.parseDouble(coords[i]), Double.parseDouble(coords[i+1]))); // Add a new location to the list of locations
-        }
+    public Segment(MapData map, int index) {
+        this.map = map;
+        this.index = index;
     }
 
     /**
-     * Draws the segment. This will be called during the redraw() method in Main.java
+     * Draws the segment in a particular colour (for highlighting, and overlays like an isochrone).
+     * This will be called during the redraw() method in Main.java
      *
      * @param g - The graphics object
      * @param origin - The Location which indicates the origin of the map
      * @param scale - The current scale of the map
+     * @param color - The colour to draw it in
      */
-    public void draw(Graphics g, Location origin, double scale) {
-        // Set the color
-        if(highlight) {g.setColor(Color.RED);} else {g.setColor(Color.BLACK);}
-
-        // Initialise arrays for x and y points.
-        int[] xPoints = new int[locations.size()];
-        int[] yPoints = new int[locations.size()];
+    public void draw(Graphics g, Location origin, double scale, Color color) {
+        g.setColor(color);
 
-        // Fille the xPoints and yPoints array
-        for(int i = 0; i < locations.size(); i++) {
-            Point p = locations.get(i).asPoint(origin, scale);
-            xPoints[i] = p.x;
-            yPoints[i] = p.y;
-        }
+        // Fill the x and y points (reusing the buffer's arrays)
+        RoadGraph graph = map.getGraph();
+        int from = graph.getCoordStart().get(index);
+        int to = graph.getCoordStart().get(index + 1);
+        buffer.project(graph.getCoordX(), graph.getCoordY(), from, to, origin, scale);
 
         // Draw the lines.
-        g.drawPolyline(xPoints, yPoints, locations.size());
-    }
-
-    /**
-     * Toggle whether this is highlighted or not.
-     */
-    public void highlight() {
-        highlight = !highlight;
+        g.drawPolyline(buffer.getX(), buffer.getY(), to - from);
     }
 
-    //  ------------------------------------------------------------------------------------------------
-    //  THE GETTERS AND SETTERS WERE AUTO GENERATED BY INTELLIJ, I HAVE ONLY ADDED THE METHOD COMMENTS.
-    //  ------------------------------------------------------------------------------------------------
-
     /**
      * @return The road the segment belongs to
      */
     public Road getRoad() {
-        return road;
+        return map.getRoad(map.getGraph().getSegRoad().get(index));
     }
 
     /**
      * @return The length of the segment
      */
     public double getLength() {
-        return length;
+        return map.getGraph().getSegLength().get(index);
     }
 
     /**
      * @return The segment's start node
      */
     public Node getNode1() {
-        return node1;
+        return map.getNode(map.getGraph().getSegNode1().get(index));
     }
 
     /**
      * @return The segment's end node
      */
     public Node getNode2() {
-        return node2;
-    }
-
-    /**
-     * @return The list of all the points along the segment
-     */
-    public ArrayList<Location> getLocations() {
-        return locations;
+        return map.getNode(map.getGraph().getSegNode2().get(index));
     }
 }
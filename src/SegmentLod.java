@@ -0,0 +1,198 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Simplified versions of every segment's line, for drawing when zoomed out.
+ *
+ * Level 0 is the full set of points (shared with the RoadGraph). Each level after that is simplified with
+ * Douglas-Peucker to a bigger tolerance (in map units), which keeps the two ends and any point that is more
+ * than the tolerance away from the simplified line. When drawing, pick the coarsest level whose tolerance is
+ * still under a pixel at the current scale, as it will look exactly the same but has far fewer points.
+ *
+ * The levels don't keep their own copy of the coordinates. Each one is a list of which of the RoadGraph's
+ * points it keeps, stored like the RoadGraph points: the points of segment s are points[l][start[l][s]] up to
+ * (but not including) points[l][start[l][s+1]]. Level 0 keeps all of them, so it is just the RoadGraph's start array.
+ */
+public class SegmentLod {
+
+    // The tolerance of each level, in map units (km). Level 0 is the full line. PolygonShapes uses the same levels.
+    static final double[] TOLERANCES = {0, 0.002, 0.008, 0.032, 0.128, 0.512};
+
+    // The biggest tolerance (in pixels) which still looks right. Under a pixel, to allow for the extra third.
+    private static final double PIXEL_TOLERANCE = 0.75;
+
+    // The points of each level, as indexes into the RoadGraph's points (except level 0, which doesn't need them)
+    private final IntBuffer[] start = new IntBuffer[TOLERANCES.length];
+    private final IntBuffer[] points = new IntBuffer[TOLERANCES.length];
+
+    /**
+     * Builds all of the levels.
+     *
+     * @param graph - The graph whose segments are to be simplified
+     */
+    public SegmentLod(RoadGraph graph) {
+        start[0] = graph.getCoordStart();
+        DoubleBuffer xs = graph.getCoordX();
+        DoubleBuffer ys = graph.getCoordY();
+
+        int segments = graph.getSegmentCount();
+        boolean[] keep = new boolean[xs.limit()];
+        int[] stack = new int[64];
+
+        int[] prevStart = new int[segments + 1];
+        for(int s = 0; s <= segments; s++) {
+            prevStart[s] = start[0].get(s);
+        }
+        int[] prevPoints = null;
+        for(int l = 1; l < TOLERANCES.length; l++) {
+            // Each level is simplified from the one before, which is faster. The errors add up, but as each
+            // tolerance is 4 times the last they come to at most a third more than this level's tolerance.
+            // Gather the last level's points, so they can be simplified in place.
+            int count = prevPoints == null ? xs.limit() : prevPoints.length;
+            double[] px = new double[count];
+            double[] py = new double[count];
+            for(int c = 0; c < count; c++) {
+                int p = prevPoints == null ? c : prevPoints[c];
+                px[c] = xs.get(p);
+                py[c] = ys.get(p);
+            }
+            double tolerance2 = TOLERANCES[l] * TOLERANCES[l];
+
+            // Mark the points to keep, and count them
+            int kept = 0;
+            for(int s = 0; s < segments; s++) {
+                stack = simplify(px, py, prevStart[s], prevStart[s + 1], tolerance2, keep, stack);
+                for(int c = prevStart[s]; c < prevStart[s + 1]; c++) {
+                    if(keep[c]) {kept++;}
+                }
+            }
+
+            // List them for this level
+            int[] levelStart = new int[segments + 1];
+            int[] levelPoints = new int[kept];
+            int n = 0;
+            for(int s = 0; s < segments; s++) {
+                for(int c = prevStart[s]; c < prevStart[s + 1]; c++) {
+                    if(keep[c]) {
+                        levelPoints[n++] = prevPoints == null ? c : prevPoints[c];
+                    }
+                }
+                levelStart[s + 1] = n;
+            }
+            start[l] = IntBuffer.wrap(levelStart);
+            points[l] = IntBuffer.wrap(levelPoints);
+            prevStart = levelStart;
+            prevPoints = levelPoints;
+        }
+    }
+
+    /**
+     * Makes the levels from arrays which were built before (by a GraphSnapshot).
+     *
+     * @param graph - The graph whose segments were simplified
+     * @param start - What getStart() returned for each level from 1 on
+     * @param points - What getPoints() returned for each level from 1 on
+     * @throws IllegalArgumentException - If there aren't the right number of levels, or they don't fit the graph
+     */
+    public SegmentLod(RoadGraph graph, IntBuffer[] start, IntBuffer[] points) {
+        if(start.length != TOLERANCES.length - 1 || points.length != start.length) {
+            throw new IllegalArgumentException("There are " + start.length + " levels, not " + (TOLERANCES.length - 1));
+        }
+        this.start[0] = graph.getCoordStart();
+        for(int l = 1; l < TOLERANCES.length; l++) {
+            IntBuffer s = start[l - 1], p = points[l - 1];
+            if(s.limit() != graph.getSegmentCount() + 1 || s.get(0) != 0 || s.get(s.limit() - 1) != p.limit()) {
+                throw new IllegalArgumentException("Level " + l + " doesn't fit the " + graph.getSegmentCount() + " segments");
+            }
+            this.start[l] = s;
+            this.points[l] = p;
+        }
+    }
+
+    /**
+     * Picks the level to draw with.
+     *
+     * @param scale - The current scale of the map (pixels per map unit)
+     * @return The coarsest level which is still accurate to a pixel
+     */
+    public static int levelFor(double scale) {
+        int level = 0;
+        while(level + 1 < TOLERANCES.length && TOLERANCES[level + 1] * scale <= PIXEL_TOLERANCE) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Runs Douglas-Peucker on the points from..to-1, setting keep[] for the ones which stay.
+     * Uses an explicit stack of (first, last) pairs rather than recursion.
+     *
+     * @return The stack (which may have been made bigger)
+     */
+    static int[] simplify(double[] x, double[] y, int from, int to, double tolerance2, boolean[] keep, int[] stack) {
+        if(to - from <= 2) { // Nothing to simplify
+            Arrays.fill(keep, from, to, true);
+            return stack;
+        }
+
+        Arrays.fill(keep, from, to, false);
+        keep[from] = true;
+        keep[to - 1] = true;
+
+        int top = 0;
+        stack[top++] = from;
+        stack[top++] = to - 1;
+        while(top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            // Find the point furthest from the line between first and last
+            int furthest = -1;
+            double furthestDist = tolerance2;
+            for(int i = first + 1; i < last; i++) {
+                double d = distToLine2(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if(d > furthestDist) {
+                    furthestDist = d;
+                    furthest = i;
+                }
+            }
+
+            // If it's too far away keep it, and simplify each side of it
+            if(furthest >= 0) {
+                keep[furthest] = true;
+                if(top + 4 > stack.length) {stack = Arrays.copyOf(stack, stack.length * 2);}
+                stack[top++] = first;
+                stack[top++] = furthest;
+                stack[top++] = furthest;
+                stack[top++] = last;
+            }
+        }
+        return stack;
+    }
+
+    /**
+     * @return The squared distance from point p to the line between a and b
+     */
+    private static double distToLine2(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / len2));
+        double ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * @return Where each segment's points start in a level (one longer than the number of segments)
+     */
+    public IntBuffer getStart(int level) {
+        return start[level];
+    }
+
+    /**
+     * @return The indexes of a level's points in the RoadGraph's points, or null for level 0 (which has all of them)
+     */
+    public IntBuffer getPoints(int level) {
+        return points[level];
+    }
+}
@@ -78,6 +78,8 @@ public class SquaresExample extends GUI {
 		getTextOutputArea().setText("example doesn't load any files.");
 	}
 
+	protected void onCancel() {}
+	protected void onCritical(boolean show) {}
 	protected void onDrag(MouseEvent e) {}
 	protected void onScroll(MouseWheelEvent e) {}
 	protected void onPress(MouseEvent e) {}
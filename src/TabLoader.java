@@ -0,0 +1,519 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToIntFunction;
+
+/**
+ * Loads the .tab files in parallel.
+ *
+ * Each file is read into one byte array, which is split into chunks at line boundaries.
+ * The chunks are parsed on a ForkJoinPool, reading the ints and doubles straight out of the bytes
+ * (no String per line, no String[] per split), and the results of each chunk are joined back
+ * together in file order. The nodes and segments are then copied into the arrays of a RoadGraph.
+ *
+ * Each chunk reports its progress when it finishes, and checks whether the load has been cancelled before it starts.
+ */
+public class TabLoader {
+
+    // Chunks smaller than this many bytes are parsed directly rather than being split again
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Something which parses a single line of a file, using a Cursor positioned at the start of the line.
+     *
+     * @param <R> - The type of object made from each line
+     */
+    private interface LineParser<R> {
+        R parse(Cursor c);
+    }
+
+    /**
+     * Loads the three .tab files into a map.
+     *
+     * @param nodes - a File for nodeID-lat-lon.tab
+     * @param roads - a File for roadID-roadInfo.tab
+     * @param segments - a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
+     * @param progress - Told how much of each file has been parsed, and checked for cancellation
+     * @return The map which was loaded
+     * @throws IOException - If one of the files can't be read, or has a line which can't be parsed
+     */
+    public static MapData load(File nodes, File roads, File segments, LoadProgress progress) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        // Nodes and roads don't depend on each other, so parse them at the same time.
+        // Road names and cities are shared between the roads with the same one, as there are a lot of repeats.
+        Map<String, String> names = new ConcurrentHashMap<>();
+        ForkJoinTask<List<NodeLine>> nodeTask = pool.submit(task(nodes, false, TabLoader::parseNode, progress));
+        List<Road> roadList = join(pool.submit(task(roads, true, c -> parseRoad(c, names), progress)), roads);
+        List<NodeLine> nodeList = join(nodeTask, nodes);
+
+        // Put them in order of ID, which is the order of their indexes in the RoadGraph
+        nodeList = byID(nodeList, n -> n.id);
+        roadList = byID(roadList, Road::getRoadID);
+        int[] nodeIDs = new int[nodeList.size()];
+        double[] nodeX = new double[nodeIDs.length];
+        double[] nodeY = new double[nodeIDs.length];
+        for(int i = 0; i < nodeIDs.length; i++) {
+            NodeLine n = nodeList.get(i);
+            nodeIDs[i] = n.id;
+            nodeX[i] = n.x;
+            nodeY[i] = n.y;
+        }
+        int[] roadIDs = roadList.stream().mapToInt(Road::getRoadID).toArray();
+
+        // Segments need the nodes and roads to already exist. Ones which refer to a road or node that doesn't are left out.
+        Queue<int[]> dangling = new ConcurrentLinkedQueue<>();
+        List<SegmentLine> segmentList = join(pool.submit(task(segments, true, c -> parseSegment(c, nodeIDs, roadIDs, dangling), progress)), segments);
+        segmentList.removeIf(Objects::isNull);
+
+        // Copy the segments and their points into the graph's arrays
+        int segmentCount = segmentList.size();
+        int[] segRoad = new int[segmentCount];
+        int[] segNode1 = new int[segmentCount];
+        int[] segNode2 = new int[segmentCount];
+        double[] segLength = new double[segmentCount];
+        int[] coordStart = new int[segmentCount + 1];
+        for(int s = 0; s < segmentCount; s++) {
+            coordStart[s + 1] = coordStart[s] + segmentList.get(s).coords.length / 2;
+        }
+        double[] coordX = new double[coordStart[segmentCount]];
+        double[] coordY = new double[coordStart[segmentCount]];
+        for(int s = 0; s < segmentCount; s++) {
+            SegmentLine seg = segmentList.get(s);
+            segRoad[s] = seg.road;
+            segNode1[s] = seg.node1;
+            segNode2[s] = seg.node2;
+            segLength[s] = seg.length;
+            for(int i = 0, c = coordStart[s]; i < seg.coords.length; i += 2, c++) {
+                coordX[c] = seg.coords[i];
+                coordY[c] = seg.coords[i + 1];
+            }
+        }
+
+        RoadGraph graph = new RoadGraph(nodeIDs, nodeX, nodeY, roadList, segRoad, segNode1, segNode2, segLength, coordStart, coordX, coordY);
+        MapData data = new MapData(graph, roadList);
+        List<int[]> danglingList = new ArrayList<>(dangling);
+        danglingList.sort(Comparator.<int[]>comparingInt(d -> d[0]).thenComparingInt(d -> d[1]).thenComparingInt(d -> d[2]));
+        data.setDanglingSegments(danglingList);
+        return data;
+    }
+
+    /**
+     * Sorts parsed lines by their ID. If an ID is in the file more than once, only the last line with it is kept.
+     *
+     * @param lines - The lines, in file order
+     * @param id - Gets the ID of a line
+     * @return The lines, in order of ID
+     */
+    private static <R> List<R> byID(List<R> lines, ToIntFunction<R> id) {
+        lines.sort(Comparator.comparingInt(id)); // A stable sort, so lines with the same ID stay in file order
+        List<R> result = new ArrayList<>(lines.size());
+        for(int i = 0; i < lines.size(); i++) {
+            if(i + 1 == lines.size() || id.applyAsInt(lines.get(i + 1)) != id.applyAsInt(lines.get(i))) {
+                result.add(lines.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for a file to be parsed.
+     *
+     * @param task - The task parsing the file
+     * @param f - The file, for the error message
+     * @return The objects made from its lines
+     * @throws IOException - If a line couldn't be parsed
+     */
+    private static <R> List<R> join(ForkJoinTask<List<R>> task, File f) throws IOException {
+        try {
+            return task.join();
+        } catch(NumberFormatException e) {
+            // join() rethrows a copy of the exception from the worker thread, with the original (and its message) as the cause
+            Throwable original = e.getCause() instanceof NumberFormatException ? e.getCause() : e;
+            throw new IOException(f.getName() + ": " + original.getMessage(), original);
+        }
+    }
+
+    /**
+     * Parses a line of nodeID-lat-lon.tab
+     */
+    private static NodeLine parseNode(Cursor c) {
+        int id = c.nextInt();
+        double lat = c.nextDouble();
+        double lon = c.nextDouble();
+        return new NodeLine(id, Location.newFromLatLon(lat, lon));
+    }
+
+    /**
+     * Parses a line of roadID-roadInfo.tab
+     *
+     * @param names - The names and cities of the roads parsed so far, so that roads with the same one can share it
+     */
+    private static Road parseRoad(Cursor c, Map<String, String> names) {
+        int id = c.nextInt();
+        int type = c.nextInt();
+        String name = shared(names, c.nextString());
+        String city = shared(names, c.nextString());
+        boolean oneway = c.nextInt() == 1;
+        int speed = c.nextInt();
+        int roadClass = c.nextInt();
+        boolean notforcar = c.nextInt() == 1;
+        boolean notforpede = c.nextInt() == 1;
+        boolean notforbicy = c.nextInt() == 1;
+        return new Road(id, type, name, city, oneway, speed, roadClass, notforcar, notforpede, notforbicy);
+    }
+
+    /**
+     * @return The copy of s which is already in strings, or s (after adding it) if there isn't one
+     */
+    private static String shared(Map<String, String> strings, String s) {
+        String old = strings.putIfAbsent(s, s);
+        return old == null ? s : old;
+    }
+
+    /**
+     * Parses a line of roadSeg-roadID-length-nodeID-nodeID-coords.tab
+     *
+     * @param nodeIDs - The node IDs, in order (so their positions are the node indexes)
+     * @param roadIDs - The road IDs, in order
+     * @return The segment, or null if its road or one of its nodes doesn't exist (its IDs are added to dangling)
+     */
+    private static SegmentLine parseSegment(Cursor c, int[] nodeIDs, int[] roadIDs, Queue<int[]> dangling) {
+        int roadID = c.nextInt();
+        double length = c.nextDouble();
+        int node1ID = c.nextInt();
+        int node2ID = c.nextInt();
+        int road = Arrays.binarySearch(roadIDs, roadID);
+        int node1 = Arrays.binarySearch(nodeIDs, node1ID);
+        int node2 = Arrays.binarySearch(nodeIDs, node2ID);
+        if(road < 0 || node1 < 0 || node2 < 0) {
+            dangling.add(new int[] {roadID, node1ID, node2ID});
+            return null;
+        }
+
+        // The rest of the line is pairs of latitude and longitude
+        double[] coords = new double[16];
+        int count = 0;
+        while(!c.atLineEnd()) {
+            double lat = c.nextDouble();
+            double lon = c.nextDouble();
+            Location l = Location.newFromLatLon(lat, lon);
+            if(count == coords.length) {coords = Arrays.copyOf(coords, count * 2);}
+            coords[count++] = l.x;
+            coords[count++] = l.y;
+        }
+        return new SegmentLine(road, length, node1, node2, Arrays.copyOf(coords, count));
+    }
+
+    /**
+     * A parsed line of nodeID-lat-lon.tab, which is copied into the RoadGraph once the whole file has been parsed.
+     */
+    private static class NodeLine {
+
+        private final int id;
+        private final double x;
+        private final double y;
+
+        NodeLine(int id, Location loc) {
+            this.id = id;
+            this.x = loc.x;
+            this.y = loc.y;
+        }
+    }
+
+    /**
+     * A parsed line of roadSeg-roadID-length-nodeID-nodeID-coords.tab, with its road and nodes as indexes,
+     * and its points as (x, y) pairs.
+     */
+    private static class SegmentLine {
+
+        private final int road;
+        private final double length;
+        private final int node1;
+        private final int node2;
+        private final double[] coords;
+
+        SegmentLine(int road, double length, int node1, int node2, double[] coords) {
+            this.road = road;
+            this.length = length;
+            this.node1 = node1;
+            this.node2 = node2;
+            this.coords = coords;
+        }
+    }
+
+    /**
+     * Reads a file, and makes the task which will parse all of it.
+     *
+     * @param f - The file to parse
+     * @param header - Whether or not the first line is a header which should be skipped
+     * @param parser - Parses each line
+     * @param progress - Told how much of the file has been parsed
+     * @return The task, which returns the parsed lines in file order
+     * @throws IOException - If the file can't be read
+     */
+    private static <R> ChunkTask<R> task(File f, boolean header, LineParser<R> parser, LoadProgress progress) throws IOException {
+        progress.checkCancelled();
+        byte[] bytes = Files.readAllBytes(f.toPath());
+        int start = header ? nextLine(bytes, 0, bytes.length) : 0;
+        progress.update(f, start, 0);
+        return new ChunkTask<>(new Chunked<>(f, bytes, parser, progress), start, bytes.length);
+    }
+
+    /**
+     * @return The index of the start of the line after the one containing pos (or end, if there isn't one)
+     */
+    private static int nextLine(byte[] bytes, int pos, int end) {
+        while(pos < end && bytes[pos] != '\n') {pos++;}
+        return Math.min(pos + 1, end);
+    }
+
+    /**
+     * Everything the chunks of one file share.
+     *
+     * @param <R> - The type of object made from each line
+     */
+    private static class Chunked<R> {
+
+        private final File file;
+        private final byte[] bytes;
+        private final LineParser<R> parser;
+        private final LoadProgress progress;
+
+        Chunked(File file, byte[] bytes, LineParser<R> parser, LoadProgress progress) {
+            this.file = file;
+            this.bytes = bytes;
+            this.parser = parser;
+            this.progress = progress;
+        }
+    }
+
+    /**
+     * Parses the lines between start and end, splitting in half (at a line boundary) until the chunk is small enough.
+     *
+     * @param <R> - The type of object made from each line
+     */
+    @SuppressWarnings("serial")
+    private static class ChunkTask<R> extends RecursiveTask<List<R>> {
+
+        private final Chunked<R> file;
+        private final int start;
+        private final int end;
+
+        ChunkTask(Chunked<R> file, int start, int end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<R> compute() {
+            file.progress.checkCancelled();
+
+            if(end - start > CHUNK_SIZE) {
+                int mid = nextLine(file.bytes, start + (end - start) / 2, end);
+                if(mid < end) {
+                    ChunkTask<R> right = new ChunkTask<>(file, mid, end);
+                    right.fork();
+                    List<R> results = new ChunkTask<>(file, start, mid).compute();
+                    results.addAll(right.join());
+                    return results;
+                }
+            }
+
+            // Small enough, so parse each line
+            List<R> results = new ArrayList<>();
+            Cursor c = new Cursor(file.bytes, start, end);
+            while(c.nextLine()) {
+                results.add(file.parser.parse(c));
+            }
+            file.progress.update(file.file, end - start, results.size());
+            return results;
+        }
+    }
+
+    /**
+     * Reads tab separated values out of a byte array, one line at a time.
+     */
+    private static class Cursor {
+
+        private final byte[] bytes;
+        private final int end;
+        // The current position
+        private int pos;
+        // The start and end of the current line (the end is the index of its '\n', or end)
+        private int lineStart;
+        private int lineEnd;
+
+        Cursor(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.end = end;
+            this.pos = start;
+            this.lineEnd = start - 1;
+        }
+
+        /**
+         * Moves to the start of the next non-blank line.
+         *
+         * @return false if there are no more lines
+         */
+        boolean nextLine() {
+            pos = lineEnd + 1;
+            while(pos < end) {
+                lineEnd = pos;
+                while(lineEnd < end && bytes[lineEnd] != '\n') {lineEnd++;}
+                if(!blank(pos, lineEnd)) {
+                    lineStart = pos;
+                    return true;
+                }
+                pos = lineEnd + 1;
+            }
+            return false;
+        }
+
+        /**
+         * @return Whether there are no more values on this line
+         */
+        boolean atLineEnd() {
+            return blank(pos, lineEnd);
+        }
+
+        /**
+         * @return The next value as an int
+         * @throws NumberFormatException - If there isn't a number next on the line
+         */
+        int nextInt() {
+            boolean negative = pos < lineEnd && bytes[pos] == '-';
+            if(negative) {pos++;}
+            int startDigits = pos;
+            int value = 0;
+            while(pos < lineEnd && isDigit(bytes[pos])) {
+                value = value * 10 + (bytes[pos++] - '0');
+            }
+            if(pos == startDigits) {throw new NumberFormatException("Expected a number: " + line());}
+            skipSeparator();
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses a plain decimal number (like -36.871900). The digits are collected into a long and divided
+         * by a power of ten. While the digits fit in 53 bits both of those are exact doubles, so the division
+         * rounds the same way Double.parseDouble does. Anything else (exponents, longer numbers) is handed to
+         * Double.parseDouble instead.
+         *
+         * @return The next value as a double
+         * @throws NumberFormatException - If there isn't a number next on the line
+         */
+        double nextDouble() {
+            int startPos = pos;
+            boolean negative = pos < lineEnd && bytes[pos] == '-';
+            if(negative) {pos++;}
+            int startDigits = pos;
+
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = 0;
+            boolean point = false;
+            while(pos < lineEnd) {
+                byte b = bytes[pos];
+                if(isDigit(b)) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if(mantissa != 0) {digits++;}
+                    if(point) {decimals++;}
+                } else if(b == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            if(pos == startDigits) {throw new NumberFormatException("Expected a number: " + line());}
+
+            if(digits > 18 || mantissa > MAX_EXACT || decimals >= POWERS_OF_TEN.length
+                    || (pos < lineEnd && !isEndOfValue(bytes[pos]))) {
+                // Too long to divide exactly, or not a plain decimal, so do it the slow way
+                while(pos < lineEnd && !isEndOfValue(bytes[pos])) {pos++;}
+                double value = Double.parseDouble(new String(bytes, startPos, pos - startPos, StandardCharsets.US_ASCII));
+                skipSeparator();
+                return value;
+            }
+
+            skipSeparator();
+            double value = mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -value : value;
+        }
+
+        /**
+         * @return The next value as a String
+         */
+        String nextString() {
+            int startPos = pos;
+            while(pos < lineEnd && !isEndOfValue(bytes[pos])) {pos++;}
+            String s = new String(bytes, startPos, pos - startPos, StandardCharsets.UTF_8);
+            skipSeparator();
+            return s;
+        }
+
+        /**
+         * @return The current line, for error messages
+         */
+        private String line() {
+            int to = lineEnd;
+            while(to > lineStart && bytes[to - 1] == '\r') {to--;}
+            return new String(bytes, lineStart, to - lineStart, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Skips the tab after a value (only one, so that empty values still take up a column)
+         */
+        private void skipSeparator() {
+            if(pos < lineEnd && bytes[pos] == '\t') {pos++;}
+        }
+
+        /**
+         * @return Whether the bytes between from and to are all whitespace
+         */
+        private boolean blank(int from, int to) {
+            for(int i = from; i < to; i++) {
+                if(!isSeparator(bytes[i])) {return false;}
+            }
+            return true;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private static boolean isEndOfValue(byte b) {
+            return b == '\t' || b == '\r';
+        }
+
+        private static boolean isSeparator(byte b) {
+            return b == '\t' || b == ' ' || b == '\r';
+        }
+
+        // The largest mantissa which a double holds exactly
+        private static final long MAX_EXACT = 1L << 53;
+        // 10^0 to 10^22, all of which are exact doubles
+        private static final double[] POWERS_OF_TEN = new double[23];
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for(int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+    }
+}
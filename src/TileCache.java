@@ -0,0 +1,233 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Draws the map from cached image tiles, so that panning around doesn't redraw everything.
+ *
+ * The map is cut up into TILE_SIZE x TILE_SIZE pixel tiles at each of a fixed set of zoom levels (ZOOM_STEPS
+ * of them for every doubling of the scale). Other scales use the tiles of the nearest level, stretched a little
+ * as they are put on the screen, so zooming in small steps doesn't need a new set of tiles every time. A tile is drawn (by a MapRenderer)
+ * the first time it's needed and kept in a least recently used cache, which throws old tiles away once it
+ * holds more than its memory budget. Tiles only hold the plain map, so highlighting things doesn't change
+ * them; highlights are drawn over the top by Main.
+ *
+ * When several tiles are missing (like after zooming) they are drawn at the same time on a pool of worker
+ * threads, each into its own image with its own Graphics2D, and then put together on the event dispatch thread.
+ * The cache itself is only ever touched from the event dispatch thread.
+ */
+public class TileCache {
+
+    // The width and height of a tile, in pixels
+    public static final int TILE_SIZE = 256;
+
+    // How many zoom levels tiles are drawn at for every doubling of the scale
+    private static final int ZOOM_STEPS = 8;
+
+    // How much memory the cached tiles can use (4 bytes a pixel)
+    private static final long MEMORY_BUDGET = 64L * 1024 * 1024;
+    private static final int MAX_TILES = (int) (MEMORY_BUDGET / (TILE_SIZE * TILE_SIZE * 4));
+
+    // Draws missing tiles, one thread per core
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+        Thread t = new Thread(r, "tile-renderer");
+        t.setDaemon(true); // Don't stop the program from quitting
+        return t;
+    });
+
+    // Draws the tiles
+    private final MapRenderer renderer;
+
+    // The tiles, least recently used first
+    @SuppressWarnings("serial")
+    private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    // Used to look up tiles, so that drawing from cached tiles doesn't make any new objects
+    private final TileKey probe = new TileKey(0, 0, 0);
+
+    /**
+     * Constructor
+     *
+     * @param renderer - Draws the tiles
+     */
+    public TileCache(MapRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Draws the part of the map which is on screen, from tiles.
+     *
+     * @param g - The graphics object
+     * @param origin - The Location at the top left corner of the screen
+     * @param scale - The current scale of the map
+     * @param width - The width of the drawing area, in pixels
+     * @param height - The height of the drawing area, in pixels
+     */
+    public void draw(Graphics g, Location origin, double scale, int width, int height) {
+        if(scale <= 0) {return;} // Zoomed all the way out, so there's nothing to see
+
+        // Tiles are drawn at the nearest zoom level, and stretched a little to the exact scale.
+        // They are laid out in "world pixels", where a Location is at (x * tileScale, -y * tileScale).
+        double tileScale = tileScale(scale);
+        double ratio = scale / tileScale;
+        double originX = origin.x * tileScale;
+        double originY = -origin.y * tileScale;
+
+        long firstX = (long) Math.floor(originX / TILE_SIZE);
+        long firstY = (long) Math.floor(originY / TILE_SIZE);
+        long lastX = (long) Math.floor((originX + width / ratio) / TILE_SIZE);
+        long lastY = (long) Math.floor((originY + height / ratio) / TILE_SIZE);
+
+        // The tiles are drawn on a copy of g, so the interpolation hint doesn't carry over to whatever is drawn next
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+            // Draw the tiles which are cached, and make a list of the ones which aren't
+            List<TileKey> missing = null;
+            for(long ty = firstY; ty <= lastY; ty++) {
+                for(long tx = firstX; tx <= lastX; tx++) {
+                    probe.set(tileScale, tx, ty);
+                    BufferedImage tile = tiles.get(probe);
+                    if(tile != null) {
+                        drawTile(g2, tile, tx, ty, originX, originY, ratio);
+                    } else {
+                        if(missing == null) {missing = new ArrayList<>();}
+                        missing.add(new TileKey(tileScale, tx, ty));
+                    }
+                }
+            }
+
+            // Draw the missing ones, cache them, and put them on the screen
+            if(missing != null) {
+                List<BufferedImage> rendered = renderTiles(missing);
+                for(int i = 0; i < missing.size(); i++) {
+                    TileKey key = missing.get(i);
+                    tiles.put(key, rendered.get(i));
+                    drawTile(g2, rendered.get(i), key.x, key.y, originX, originY, ratio);
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Snaps a scale to a zoom level, so that zooming by small steps (like with a trackpad) reuses the same
+     * tiles rather than drawing a whole new set for every step.
+     *
+     * @param scale - The current scale of the map
+     * @return The scale the tiles are drawn at
+     */
+    static double tileScale(double scale) {
+        return Math.pow(2, Math.round(Math.log(scale) / Math.log(2) * ZOOM_STEPS) / (double) ZOOM_STEPS);
+    }
+
+    /**
+     * Puts a tile on the screen, stretched from its zoom level to the exact scale. The edges are worked out
+     * from the tile boundaries, so neighbouring tiles always meet without a gap.
+     */
+    private static void drawTile(Graphics2D g, BufferedImage tile, long tx, long ty, double originX, double originY, double ratio) {
+        int x1 = (int) Math.round((tx * TILE_SIZE - originX) * ratio);
+        int y1 = (int) Math.round((ty * TILE_SIZE - originY) * ratio);
+        int x2 = (int) Math.round(((tx + 1) * TILE_SIZE - originX) * ratio);
+        int y2 = (int) Math.round(((ty + 1) * TILE_SIZE - originY) * ratio);
+        if(x2 - x1 == TILE_SIZE && y2 - y1 == TILE_SIZE) { // No stretching needed, so just copy it
+            g.drawImage(tile, x1, y1, null);
+        } else {
+            g.drawImage(tile, x1, y1, x2, y2, 0, 0, TILE_SIZE, TILE_SIZE, null);
+        }
+    }
+
+    /**
+     * Draws tiles, on the worker threads if there is more than one.
+     *
+     * @param keys - The tiles to draw
+     * @return The tiles, in the same order as the keys
+     */
+    private List<BufferedImage> renderTiles(List<TileKey> keys) {
+        List<BufferedImage> results = new ArrayList<>(keys.size());
+        if(keys.size() == 1) { // Not worth handing over to another thread
+            results.add(renderTile(keys.get(0)));
+            return results;
+        }
+
+        List<Callable<BufferedImage>> tasks = new ArrayList<>(keys.size());
+        for(TileKey key : keys) {
+            tasks.add(() -> renderTile(key));
+        }
+        try {
+            for(Future<BufferedImage> f : WORKERS.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while drawing tiles", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("Could not draw tile", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Draws a tile. This is called on the worker threads, so it only reads from the map.
+     */
+    private BufferedImage renderTile(TileKey key) {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = tile.createGraphics();
+        // The Location at the top left of the tile
+        Location tileOrigin = new Location(key.x * TILE_SIZE / key.scale, -(key.y * TILE_SIZE) / key.scale);
+        renderer.draw(g, tileOrigin, key.scale, TILE_SIZE, TILE_SIZE);
+        g.dispose();
+        return tile;
+    }
+
+    /**
+     * Identifies a tile: the scale it was drawn at, and where it is.
+     */
+    private static class TileKey {
+
+        // Not final, so the probe key can be reused. Keys in the cache are never changed.
+        private double scale;
+        private long x;
+        private long y;
+
+        TileKey(double scale, long x, long y) {
+            set(scale, x, y);
+        }
+
+        void set(double scale, long x, long y) {
+            this.scale = scale;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof TileKey)) {return false;}
+            TileKey k = (TileKey) o;
+            return k.scale == scale && k.x == x && k.y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            // Worked out by hand, as Objects.hash() would box the values
+            long h = Double.doubleToLongBits(scale);
+            h = h * 31 + x;
+            h = h * 31 + y;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Works out the cost of travelling between every pair of a set of sources and a set of targets (an N x M matrix).
+ *
+ * Rather than a separate search for every pair, there is one Dijkstra search per source, which stops once
+ * it has settled every target (see RoutePlanner.costs). The sources are split between the threads of a
+ * ForkJoinPool, and each thread reuses its own search arrays from the RoutePlanner, so the searches don't
+ * allocate anything or get in each other's way. Each search writes its own row of the matrix.
+ */
+public class TravelMatrix {
+
+    // The most sources a task handles before it is split in two
+    private static final int SOURCES_PER_TASK = 4;
+
+    /**
+     * Works out the matrix, on the common ForkJoinPool.
+     *
+     * @param planner - The route planner for the graph
+     * @param sources - The indexes of the nodes to start at
+     * @param targets - The indexes of the nodes to finish at
+     * @param profile - Decides which roads can be used, and what they cost
+     * @return The costs, a row for each source: the cost from sources[i] to targets[j] is at i * targets.length + j
+     *         (infinity if there is no route)
+     */
+    public static double[] compute(RoutePlanner planner, int[] sources, int[] targets, RouteProfile profile) {
+        return compute(ForkJoinPool.commonPool(), planner, sources, targets, profile);
+    }
+
+    /**
+     * Works out the matrix, on the given pool.
+     *
+     * @param pool - The pool to run the searches on
+     * @param planner - The route planner for the graph
+     * @param sources - The indexes of the nodes to start at
+     * @param targets - The indexes of the nodes to finish at
+     * @param profile - Decides which roads can be used, and what they cost
+     * @return The costs, a row for each source: the cost from sources[i] to targets[j] is at i * targets.length + j
+     *         (infinity if there is no route)
+     */
+    public static double[] compute(ForkJoinPool pool, RoutePlanner planner, int[] sources, int[] targets, RouteProfile profile) {
+        double[] matrix = new double[sources.length * targets.length];
+        // Every search looks at much of the graph, so work out the costs of the segments once
+        RouteProfile costs = RouteProfile.precompute(planner.getGraph(), profile);
+        pool.invoke(new RowsTask(planner, sources, targets, costs, matrix, 0, sources.length));
+        return matrix;
+    }
+
+    /**
+     * Fills in the rows for the sources between start and end, splitting in half until there are few enough.
+     */
+    @SuppressWarnings("serial")
+    private static class RowsTask extends RecursiveAction {
+
+        private final RoutePlanner planner;
+        private final int[] sources;
+        private final int[] targets;
+        private final RouteProfile profile;
+        private final double[] matrix;
+        private final int start;
+        private final int end;
+
+        RowsTask(RoutePlanner planner, int[] sources, int[] targets, RouteProfile profile, double[] matrix, int start, int end) {
+            this.planner = planner;
+            this.sources = sources;
+            this.targets = targets;
+            this.profile = profile;
+            this.matrix = matrix;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start > SOURCES_PER_TASK) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new RowsTask(planner, sources, targets, profile, matrix, start, mid),
+                        new RowsTask(planner, sources, targets, profile, matrix, mid, end));
+                return;
+            }
+
+            for(int i = start; i < end; i++) {
+                planner.costs(sources[i], targets, profile, matrix, i * targets.length);
+            }
+        }
+    }
+}
@@ -1,5 +1,10 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.ToIntFunction;
 
 /**
  * A trie is an ordered tree data structure.
@@ -11,6 +16,18 @@ import java.util.List;
  * up an object, and find it without looking through every
  * object which this contains.
  *
+ * It is a radix tree: a run of characters with no branches is stored as one
+ * node with a multi-character label, instead of one node per character.
+ *
+ * Each object also has a score, and every node remembers the best score below
+ * it. That lets search() hand back the best matches first, without looking at
+ * the parts of the tree which can't beat what has already been found.
+ *
+ * fuzzy() finds names which are within a few typos of the search, by walking
+ * the tree with a Levenshtein automaton (a row of edit distances which is
+ * updated one character at a time), and giving up on any branch once every
+ * distance in the row is too big.
+ *
  * @param <T> - The class which is being indexed
  */
 public class Trie<T> {
@@ -18,12 +35,25 @@ public class Trie<T> {
     // The root node
     private TrieNode<T> root;
 
+    // Gives each object its score (higher is better)
+    private ToIntFunction<T> scorer;
+
     /**
      * Create a Trie.
-     * All this does is initialise the root node.
+     * All this does is initialise the root node. Every object has the same score.
      */
     public Trie() {
-        root = new TrieNode<T>("");
+        this(data -> 0);
+    }
+
+    /**
+     * Create a Trie which ranks its search results.
+     *
+     * @param scorer - Gives each object its score (higher is better). It should always give the same score for the same object.
+     */
+    public Trie(ToIntFunction<T> scorer) {
+        this.root = new TrieNode<T>(new char[0]);
+        this.scorer = scorer;
     }
 
     /**
@@ -34,40 +64,78 @@ public class Trie<T> {
      */
     public void add(String name, T data) {
         char[] word = name.toCharArray();
+        int score = scorer.applyAsInt(data);
         TrieNode<T> node = root;
+        node.offerScore(score);
+        int i = 0;
+
+        while(i < word.length) {
+            TrieNode<T> child = node.getChild(word[i]);
+
+            // If there's no child for the next character, the rest of the word becomes a new child.
+            if(child == null) {
+                child = new TrieNode<T>(Arrays.copyOfRange(word, i, word.length));
+                node.putChild(child);
+                node = child;
+                break;
+            }
+
+            // Follow the child's label as far as it matches
+            char[] label = child.getLabel();
+            int j = 0;
+            while(j < label.length && i < word.length && label[j] == word[i]) {
+                i++;
+                j++;
+            }
 
-        for (char c : word) {
-            // If the correct child node doesn't exist, make it.
-            if(!node.getChildren().containsKey(c)) {
-                node.getChildren().put(c, new TrieNode<T>(node.getPrefix() + c));
+            // If the word leaves the label part way through, split the label there
+            if(j < label.length) {
+                child = child.split(j);
+                node.putChild(child);
             }
 
             // Move onto the child node
-            node = node.getChildren().get(c);
+            node = child;
+            node.offerScore(score);
         }
 
         // Add the data to the node
-        node.getData().add(data);
+        node.offerScore(score);
+        node.addData(data);
     }
 
     /**
-     * Gets all objects which start with the prefix.
+     * Gets all objects which have exactly this name.
      *
-     * @param name - The prefix to be searched for
-     * @return An ArrayList containing all objects which start with the prefix
+     * @param name - The name to be searched for
+     * @return An ArrayList containing all objects with the name (null if nothing starts with it)
      */
     public ArrayList<T> get(String name) {
         char[] word = name.toCharArray();
         TrieNode<T> node = root;
+        int i = 0;
 
-        for(char c : word) {
+        while(i < word.length) {
             // If there is no correct child, return null
-            if(!node.getChildren().containsKey(c)) {return null;}
-            // Otherwise mode on to the child
-            node = node.getChildren().get(c);
+            TrieNode<T> child = node.getChild(word[i]);
+            if(child == null) {return null;}
+
+            // The word has to match the child's label
+            char[] label = child.getLabel();
+            int j = 0;
+            while(j < label.length && i < word.length && label[j] == word[i]) {
+                i++;
+                j++;
+            }
+            if(j < label.length) {
+                // A prefix of something, but not a whole name
+                return i == word.length ? new ArrayList<T>() : null;
+            }
+            node = child;
         }
+
         // Return the data
-        return node.getData();
+        return node.getData() == null ? new ArrayList<T>() : node.getData();
     }
 
     /**
@@ -76,19 +144,146 @@ public class Trie<T> {
      * @return A list containing all objects which begin with the searched name.
      */
     public ArrayList<T> getAll(String name) {
+        TrieNode<T> node = find(name);
+        if(node == null) {return null;}
+
         ArrayList<T> results = new ArrayList<T>();
-        char[] word = name.toCharArray();
+        getAllFrom(node, results);
+        return results;
+    }
+
+    /**
+     * Searches for everything starting with a prefix, best score first.
+     * The results are found as they're asked for, so taking the first few is cheap even if lots of things match.
+     *
+     * @param prefix - The prefix to be searched for
+     * @return An iterator over the matching objects, in order of score (best first)
+     */
+    public Iterator<T> search(String prefix) {
+        return new RankedIterator(find(prefix));
+    }
+
+    /**
+     * Gets the best k objects starting with a prefix.
+     *
+     * @param prefix - The prefix to be searched for
+     * @param k - The most objects to return
+     * @return A list of up to k objects, best score first (null if nothing starts with the prefix)
+     */
+    public ArrayList<T> top(String prefix, int k) {
+        return top(find(prefix), k);
+    }
+
+    /**
+     * Gets the best k objects held by a node or below it.
+     *
+     * @param node - The node (from find() or a TrieCursor)
+     * @param k - The most objects to return
+     * @return A list of up to k objects, best score first (null if the node is null)
+     */
+    public ArrayList<T> top(TrieNode<T> node, int k) {
+        if(node == null) {return null;}
+
+        ArrayList<T> results = new ArrayList<T>();
+        Iterator<T> it = new RankedIterator(node);
+        while(results.size() < k && it.hasNext()) {
+            results.add(it.next());
+        }
+        return results;
+    }
+
+    /**
+     * Gets all objects whose name is within maxEdits edits (insertions, deletions or substitutions) of the name.
+     *
+     * @param name - The name to be searched for
+     * @param maxEdits - The most edits allowed (1 or 2 is sensible, more gets slow)
+     * @return The matching objects, closest first (and best score first for the same distance)
+     */
+    public ArrayList<T> fuzzy(String name, int maxEdits) {
+        // The first row is the distance from the empty string to each prefix of the name
+        int[] row = new int[name.length() + 1];
+        for(int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+
+        // Collect the matches, grouped by distance
+        List<List<T>> byDistance = new ArrayList<>();
+        for(int d = 0; d <= maxEdits; d++) {
+            byDistance.add(new ArrayList<T>());
+        }
+        fuzzyFrom(root, name, row, maxEdits, byDistance);
+
+        ArrayList<T> results = new ArrayList<T>();
+        for(List<T> matches : byDistance) {
+            matches.sort((a, b) -> Integer.compare(scorer.applyAsInt(b), scorer.applyAsInt(a)));
+            results.addAll(matches);
+        }
+        return results;
+    }
+
+    /**
+     * Moves the automaton along a node's label, and then on to its children.
+     *
+     * @param node - The node
+     * @param name - The name being searched for
+     * @param row - The edit distances between the key so far and each prefix of the name
+     * @param maxEdits - The most edits allowed
+     * @param byDistance - The matches found, grouped by distance
+     */
+    private void fuzzyFrom(TrieNode<T> node, String name, int[] row, int maxEdits, List<List<T>> byDistance) {
+        for(char c : node.getLabel()) {
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int best = next[0];
+            for(int i = 1; i < row.length; i++) {
+                int substitute = row[i - 1] + (name.charAt(i - 1) == c ? 0 : 1);
+                next[i] = Math.min(substitute, Math.min(row[i] + 1, next[i - 1] + 1));
+                best = Math.min(best, next[i]);
+            }
+            // Nothing below here can get close enough
+            if(best > maxEdits) {return;}
+            row = next;
+        }
+
+        // The whole name against the key so far
+        int distance = row[row.length - 1];
+        if(distance <= maxEdits && node.getData() != null) {
+            byDistance.get(distance).addAll(node.getData());
+        }
+
+        for(int i = 0; i < node.getChildCount(); i++) {
+            fuzzyFrom(node.getChildAt(i), name, row, maxEdits, byDistance);
+        }
+    }
+
+    /**
+     * Finds the node which holds everything starting with a prefix.
+     * As labels can be more than one character, the prefix may end part way through the node's label.
+     *
+     * @param prefix - The prefix
+     * @return The node, or null if nothing starts with the prefix
+     */
+    public TrieNode<T> find(String prefix) {
         TrieNode<T> node = root;
+        int i = 0;
 
-        for(char c : word) {
+        while(i < prefix.length()) {
             // If there is no correct child, return null
-            if(!node.getChildren().containsKey(c)) {return null;}
+            TrieNode<T> child = node.getChild(prefix.charAt(i));
+            if(child == null) {return null;}
+
+            // Follow the label until either it or the prefix runs out
+            char[] label = child.getLabel();
+            int j = 0;
+            while(j < label.length && i < prefix.length()) {
+                if(label[j] != prefix.charAt(i)) {return null;}
+                i++;
+                j++;
+            }
             // Otherwise mode on to the child
-            node = node.getChildren().get(c);
+            node = child;
         }
-
-        getAllFrom(node, results);
-        return results;
+        return node;
     }
 
     /**
@@ -97,11 +292,86 @@ public class Trie<T> {
      * @param results - The list to add all the objects to
      */
     public void getAllFrom(TrieNode<T> node, List<T> results) {
-        results.addAll(node.getData());
+        if(node.getData() != null) {
+            results.addAll(node.getData());
+        }
 
-        node.getChildren().keySet().stream()
-                .map(k->node.getChildren().get(k))
-                .forEach(child->getAllFrom(child, results));
+        for(int i = 0; i < node.getChildCount(); i++) {
+            getAllFrom(node.getChildAt(i), results);
+        }
     }
 
+    /**
+     * Goes through a subtree best first. The queue holds both nodes (ranked by the best score below them) and
+     * objects (ranked by their own score), so an object comes out once nothing left in the queue can beat it.
+     */
+    private class RankedIterator implements Iterator<T> {
+
+        // Nodes and objects still to look at, best first
+        private final PriorityQueue<Ranked> queue = new PriorityQueue<>();
+
+        RankedIterator(TrieNode<T> start) {
+            if(start != null) {queue.add(new Ranked(start, start.getMaxScore()));}
+        }
+
+        @Override
+        public boolean hasNext() {
+            // Open up nodes until the best thing in the queue is an object
+            while(!queue.isEmpty() && queue.peek().node != null) {
+                TrieNode<T> node = queue.poll().node;
+                if(node.getData() != null) {
+                    for(T item : node.getData()) {
+                        queue.add(new Ranked(item, scorer.applyAsInt(item)));
+                    }
+                }
+                for(int i = 0; i < node.getChildCount(); i++) {
+                    TrieNode<T> child = node.getChildAt(i);
+                    queue.add(new Ranked(child, child.getMaxScore()));
+                }
+            }
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if(!hasNext()) {throw new NoSuchElementException();}
+            return queue.poll().item;
+        }
+    }
+
+    /**
+     * Something in the RankedIterator's queue: either a node or an object, with its score.
+     */
+    private class Ranked implements Comparable<Ranked> {
+
+        private final TrieNode<T> node;
+        private final T item;
+        private final int score;
+
+        Ranked(TrieNode<T> node, int score) {
+            this.node = node;
+            this.item = null;
+            this.score = score;
+        }
+
+        Ranked(T item, int score) {
+            this.node = null;
+            this.item = item;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            // Best score first. On a tie objects come before nodes, so they're handed out as soon as possible.
+            if(score != other.score) {return Integer.compare(other.score, score);}
+            return Boolean.compare(node != null, other.node != null);
+        }
+    }
+
+    /**
+     * @return The root node
+     */
+    public TrieNode<T> getRoot() {
+        return root;
+    }
 }
@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Remembers where a search got to in a Trie, so the next search can carry on from there
+ * instead of starting again at the root.
+ *
+ * The cursor keeps a stack with one entry for each character of the search: the node whose label
+ * the search has reached, and how far along that label it is. Typing a character pushes one entry
+ * (one step down the tree), and deleting one pops it, so the work for each key press depends on
+ * how much the search changed, not on how long it is. The best results for each prefix are kept
+ * on the stack as well, so deleting a character gives back the old results without searching again.
+ *
+ * If the search stops matching anything, the extra characters are still pushed (with no node), so
+ * deleting them finds its way back to where the search last matched.
+ *
+ * @param <T> - The class which is being indexed
+ */
+public class TrieCursor<T> {
+
+    // The Trie being searched
+    private final Trie<T> trie;
+
+    // The most results to keep for each prefix
+    private final int k;
+
+    // The search so far
+    private final StringBuilder text = new StringBuilder();
+
+    // For each prefix of the search (index 0 is the empty search): the node reached, how much of its label
+    // has been used, and the best results (made when they're first asked for)
+    private TrieNode<?>[] nodes = new TrieNode<?>[16];
+    private int[] offsets = new int[16];
+    private ArrayList<?>[] results = new ArrayList<?>[16];
+
+    // How many characters of the search match something in the trie
+    private int matched = 0;
+
+    /**
+     * Creates a cursor at the root of the trie (an empty search).
+     *
+     * @param trie - The Trie to search
+     * @param k - The most results to keep for each prefix
+     */
+    public TrieCursor(Trie<T> trie, int k) {
+        this.trie = trie;
+        this.k = k;
+        nodes[0] = trie.getRoot();
+    }
+
+    /**
+     * Moves the cursor to a new search. Only the characters after the part it has in common with the
+     * old search are looked at.
+     *
+     * @param search - The new search
+     */
+    public void moveTo(String search) {
+        int common = 0;
+        int max = Math.min(text.length(), search.length());
+        while(common < max && text.charAt(common) == search.charAt(common)) {
+            common++;
+        }
+
+        while(text.length() > common) {
+            pop();
+        }
+        for(int i = common; i < search.length(); i++) {
+            push(search.charAt(i));
+        }
+    }
+
+    /**
+     * Adds a character to the end of the search.
+     *
+     * @param c - The character
+     */
+    @SuppressWarnings("unchecked")
+    public void push(char c) {
+        int depth = text.length();
+        if(depth + 1 == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            results = Arrays.copyOf(results, results.length * 2);
+        }
+        text.append(c);
+        nodes[depth + 1] = null;
+        results[depth + 1] = null;
+
+        // Already past the end of what matches
+        if(matched < depth) {return;}
+
+        TrieNode<T> node = (TrieNode<T>) nodes[depth];
+        int offset = offsets[depth];
+        char[] label = node.getLabel();
+
+        if(offset < label.length) {
+            // Part way along a label, so the next character has to match it
+            if(label[offset] != c) {return;}
+            nodes[depth + 1] = node;
+            offsets[depth + 1] = offset + 1;
+        } else {
+            // At the end of a label, so step down to a child
+            TrieNode<T> child = node.getChild(c);
+            if(child == null) {return;}
+            nodes[depth + 1] = child;
+            offsets[depth + 1] = 1;
+        }
+        matched++;
+    }
+
+    /**
+     * Removes the last character of the search (if there is one).
+     */
+    public void pop() {
+        int depth = text.length();
+        if(depth == 0) {return;}
+        text.setLength(depth - 1);
+        nodes[depth] = null;
+        results[depth] = null;
+        matched = Math.min(matched, depth - 1);
+    }
+
+    /**
+     * @return Whether anything starts with the search
+     */
+    public boolean isMatched() {
+        return matched == text.length();
+    }
+
+    /**
+     * @return The node which holds everything starting with the search, or null if nothing does
+     */
+    @SuppressWarnings("unchecked")
+    public TrieNode<T> getNode() {
+        return isMatched() ? (TrieNode<T>) nodes[text.length()] : null;
+    }
+
+    /**
+     * @return The objects whose name is exactly the search, or null if there aren't any
+     */
+    public ArrayList<T> getExact() {
+        TrieNode<T> node = getNode();
+        if(node == null || offsets[text.length()] < node.getLabel().length) {return null;}
+        return node.getData();
+    }
+
+    /**
+     * Gets the best objects starting with the search. These are remembered, so asking again
+     * (or coming back to this search by deleting characters) doesn't search again.
+     *
+     * @return Up to k objects, best score first (null if nothing starts with the search)
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<T> top() {
+        int depth = text.length();
+        if(!isMatched()) {return null;}
+        if(results[depth] == null) {
+            results[depth] = trie.top(getNode(), k);
+        }
+        return (ArrayList<T>) results[depth];
+    }
+
+    /**
+     * @return The Trie being searched
+     */
+    public Trie<T> getTrie() {
+        return trie;
+    }
+
+    /**
+     * @return The search so far
+     */
+    public String getText() {
+        return text.toString();
+    }
+}
@@ -1,37 +1,111 @@
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
- * This is an ordered tree, which indexes its nodes by the
- * order of their prefix. It is used to be able to search
- * up an object, and find it without looking through every
- * object which this contains.
+ * A node of a radix tree (a trie where chains of nodes with only one child are squashed into one node).
+ *
+ * Each node has a label, which is the characters on the edge from its parent to it, so the key a node
+ * represents is all of the labels from the root down to it. Children are kept in a small array sorted by
+ * the first character of their label, and the data list is only made once something is actually added.
  *
  * @param <T> - The class which is being indexed
  */
 public class TrieNode<T> {
 
-    // The children of this node
-    private HashMap<Character, TrieNode<T>> children = new HashMap<Character, TrieNode<T>>();
+    private static final char[] NO_KEYS = new char[0];
+    private static final TrieNode<?>[] NO_CHILDREN = new TrieNode<?>[0];
+
+    // The characters on the edge from the parent to this node
+    private char[] label;
+
+    // The first character of each child's label (sorted), and the children in the same order
+    private char[] keys = NO_KEYS;
+    private TrieNode<?>[] children = NO_CHILDREN;
 
-    // The data held by the node (allows multiple of the same data.
+    // The data held by the node (null if nothing has been added here)
     private ArrayList<T> data;
 
-    // Whether or not this node actually holds data
-    private boolean holdsData = false;
+    // The best score of any data in this node or below it
+    private int maxScore = Integer.MIN_VALUE;
+
+    /**
+     * Creates the node, with no data and no children.
+     *
+     * @param label - The characters on the edge from the parent to this node
+     */
+    public TrieNode(char[] label) {
+        this.label = label;
+    }
+
+    /**
+     * @param c - The first character of the child's label
+     * @return The child whose label starts with c, or null if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public TrieNode<T> getChild(char c) {
+        int i = Arrays.binarySearch(keys, c);
+        return i < 0 ? null : (TrieNode<T>) children[i];
+    }
 
-    // The prefix up until here (including this node)
-    private String prefix;
+    /**
+     * Adds a child, or replaces the child whose label starts with the same character.
+     *
+     * @param child - The new child
+     */
+    public void putChild(TrieNode<T> child) {
+        char c = child.label[0];
+        int i = Arrays.binarySearch(keys, c);
+        if(i >= 0) {
+            children[i] = child;
+            return;
+        }
+
+        // Make room for it in the sorted arrays
+        i = -i - 1;
+        char[] newKeys = new char[keys.length + 1];
+        TrieNode<?>[] newChildren = new TrieNode<?>[children.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, i);
+        System.arraycopy(children, 0, newChildren, 0, i);
+        newKeys[i] = c;
+        newChildren[i] = child;
+        System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+        System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+        keys = newKeys;
+        children = newChildren;
+    }
 
     /**
-     * Creates the node, data is not required,
-     * although the alternate constructor allows for data to be entered at the same time
+     * Splits this node's label in two, putting a new node in between this node and its parent.
+     * The new node gets the first part of the label, and this node keeps the rest.
      *
-     * @param prefix - The prefix up until here (including this node)
+     * @param at - How many characters of the label go to the new node
+     * @return The new node, which the parent should use in place of this one
      */
-    public TrieNode(String prefix) {
-        this.prefix = prefix;
-        this.data = new ArrayList<T>();
+    public TrieNode<T> split(int at) {
+        TrieNode<T> parent = new TrieNode<T>(Arrays.copyOfRange(label, 0, at));
+        label = Arrays.copyOfRange(label, at, label.length);
+        parent.putChild(this);
+        parent.maxScore = maxScore;
+        return parent;
+    }
+
+    /**
+     * Adds some data to the node.
+     *
+     * @param item - The data
+     */
+    public void addData(T item) {
+        if(data == null) {data = new ArrayList<T>(1);}
+        data.add(item);
+    }
+
+    /**
+     * Lets the node know that data with this score has been added to it or below it.
+     *
+     * @param score - The score of the data
+     */
+    public void offerScore(int score) {
+        maxScore = Math.max(maxScore, score);
     }
 
     //  ------------------------------------------------------------------------------------------------
@@ -39,7 +113,7 @@ public class TrieNode<T> {
     //  ------------------------------------------------------------------------------------------------
 
     /**
-     * @return The ArrayList containing the data
+     * @return The ArrayList containing the data, or null if there isn't any
      */
     public ArrayList<T> getData() {
         return data;
@@ -49,20 +123,35 @@ public class TrieNode<T> {
      * @return Whether or not the TrieNode contains data
      */
     public boolean isHoldsData() {
-        return holdsData;
+        return data != null;
+    }
+
+    /**
+     * @return The characters on the edge from the parent to this node
+     */
+    public char[] getLabel() {
+        return label;
+    }
+
+    /**
+     * @return The best score of any data in this node or below it
+     */
+    public int getMaxScore() {
+        return maxScore;
     }
 
     /**
-     * @return The prefix of the TrieNode, including the character this node represents
+     * @return The number of children
      */
-    public String getPrefix() {
-        return prefix;
+    public int getChildCount() {
+        return children.length;
     }
 
     /**
-     * @return The Children of the TrieNode
+     * @return The i'th child (in order of the first character of their labels)
      */
-    public HashMap<Character, TrieNode<T>> getChildren() {
-        return children;
+    @SuppressWarnings("unchecked")
+    public TrieNode<T> getChildAt(int i) {
+        return (TrieNode<T>) children[i];
     }
 }
@@ -0,0 +1,166 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The banned turns at intersections, from restrictions.tab.
+ *
+ * Each line of the file is (node 1, road 1, node, road 2, node 2): coming into the intersection "node" from
+ * node 1 along road 1, you can't turn onto road 2 towards node 2. Turns are looked up by the intersection
+ * (the via node) and the segments coming in and going out, using RoadGraph indexes. Both ends of the turn
+ * matter as well as the roads: a U-turn ban (where node 1 and node 2 are the same, and so are the roads)
+ * only stops you going back the way you came, not carrying on along the road.
+ *
+ * The turns are stored in compressed sparse row form, like the RoadGraph's adjacency: the turns at node i
+ * are fromNode/inRoad/outRoad/toNode[start[i]] up to (but not including) start[i+1]. So finding out that an intersection has
+ * no banned turns (which is nearly all of them) is a single comparison, and the few which do have some
+ * only have a handful to look through.
+ */
+public class TurnRestrictions {
+
+    // The name of the restrictions file, which lives in the same directory as the other .tab files
+    public static final String FILENAME = "restrictions.tab";
+
+    // Where each node's turns start (one longer than the number of nodes)
+    private final int[] start;
+    // The node and road coming in, and the road and node going out, of each banned turn, grouped by node
+    private final int[] fromNode;
+    private final int[] inRoad;
+    private final int[] outRoad;
+    private final int[] toNode;
+
+    /**
+     * Creates the lookup from a list of banned turns (in any order).
+     *
+     * @param nodeCount - The number of nodes in the graph
+     * @param via - The node index of each turn's intersection
+     * @param from - The node index each turn comes in from
+     * @param in - The road index each turn comes in on
+     * @param out - The road index each turn goes out on
+     * @param to - The node index each turn goes out towards
+     * @param count - The number of turns in the arrays
+     */
+    public TurnRestrictions(int nodeCount, int[] via, int[] from, int[] in, int[] out, int[] to, int count) {
+        start = new int[nodeCount + 1];
+        for(int i = 0; i < count; i++) {
+            start[via[i] + 1]++;
+        }
+        for(int i = 0; i < nodeCount; i++) {
+            start[i + 1] += start[i];
+        }
+
+        fromNode = new int[count];
+        inRoad = new int[count];
+        outRoad = new int[count];
+        toNode = new int[count];
+        int[] next = Arrays.copyOf(start, nodeCount);
+        for(int i = 0; i < count; i++) {
+            int j = next[via[i]]++;
+            fromNode[j] = from[i];
+            inRoad[j] = in[i];
+            outRoad[j] = out[i];
+            toNode[j] = to[i];
+        }
+    }
+
+    /**
+     * Reads the banned turns from a file. Lines which refer to a node or road which isn't in the graph are skipped.
+     *
+     * @param file - The restrictions file (if it doesn't exist, there are no banned turns)
+     * @param graph - The road graph
+     * @return The banned turns
+     * @throws IOException - If the file can't be read
+     */
+    public static TurnRestrictions load(File file, RoadGraph graph) throws IOException {
+        int[] via = new int[16];
+        int[] from = new int[16];
+        int[] in = new int[16];
+        int[] out = new int[16];
+        int[] to = new int[16];
+        int count = 0;
+
+        if(file.isFile()) {
+            try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                reader.readLine(); // Skip the header
+                String line;
+                while((line = reader.readLine()) != null) {
+                    String[] values = line.split("\t");
+                    if(values.length < 5) {continue;}
+
+                    int node1 = graph.nodeIndex(Integer.parseInt(values[0].trim()));
+                    int road1 = graph.roadIndex(Integer.parseInt(values[1].trim()));
+                    int node = graph.nodeIndex(Integer.parseInt(values[2].trim()));
+                    int road2 = graph.roadIndex(Integer.parseInt(values[3].trim()));
+                    int node2 = graph.nodeIndex(Integer.parseInt(values[4].trim()));
+                    if(node1 < 0 || road1 < 0 || node < 0 || road2 < 0 || node2 < 0) {continue;}
+
+                    if(count == via.length) {
+                        via = Arrays.copyOf(via, count * 2);
+                        from = Arrays.copyOf(from, count * 2);
+                        in = Arrays.copyOf(in, count * 2);
+                        out = Arrays.copyOf(out, count * 2);
+                        to = Arrays.copyOf(to, count * 2);
+                    }
+                    via[count] = node;
+                    from[count] = node1;
+                    in[count] = road1;
+                    out[count] = road2;
+                    to[count] = node2;
+                    count++;
+                }
+            }
+        }
+        return new TurnRestrictions(graph.getNodeCount(), via, from, in, out, to, count);
+    }
+
+    /**
+     * @param node - The index of a node
+     * @return Whether the node has any banned turns
+     */
+    public boolean hasAny(int node) {
+        return start[node] != start[node + 1];
+    }
+
+    /**
+     * @param graph - The road graph
+     * @param node - The index of the intersection
+     * @param in - The index of the segment coming into the intersection
+     * @param out - The index of the segment going out of it
+     * @return Whether the turn is banned
+     */
+    public boolean isBanned(RoadGraph graph, int node, int in, int out) {
+        IntBuffer segRoad = graph.getSegRoad();
+        int from = graph.otherNode(in, node);
+        int to = graph.otherNode(out, node);
+        for(int i = start[node]; i < start[node + 1]; i++) {
+            if(inRoad[i] == segRoad.get(in) && outRoad[i] == segRoad.get(out) && fromNode[i] == from && toNode[i] == to) {return true;}
+        }
+        return false;
+    }
+
+    /**
+     * Checks a route which was found without looking at banned turns (like one from a ContractionHierarchy).
+     *
+     * @param graph - The road graph
+     * @param route - The route
+     * @return Whether the route doesn't make any banned turns
+     */
+    public boolean allows(RoadGraph graph, Route route) {
+        int[] nodes = route.getNodes();
+        int[] segments = route.getSegments();
+        for(int i = 1; i < segments.length; i++) {
+            if(hasAny(nodes[i]) && isBanned(graph, nodes[i], segments[i - 1], segments[i])) {return false;}
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of banned turns
+     */
+    public int size() {
+        return inRoad.length;
+    }
+}